@@ -0,0 +1,62 @@
+package org.mmg.pagerank.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.mmg.pagerank.PRPartitionPolicy;
+import org.mmg.pagerank.PRSettings;
+import org.mmg.pagerank.matrix.GraphGenerator;
+import org.mmg.pagerank.matrix.PRMatrixPolicy;
+import org.mmg.pagerank.matrix.PRNodeOrder;
+
+/**
+ * Synthetic files of links for the benchmarks, written to a temporary file by the
+ * setup of each trial with GraphGenerator. The same size, shape and seed always give
+ * the same file, so the results of different versions can be compared.
+ * <br>
+ * <br>
+ * Shapes: the models of GraphGenerator (uniform, rmat and preferential), with
+ * AVERAGE_DEGREE links per URL and no dangling nodes, self links or sink components.
+ *
+ * @author Manuel Medina González
+ * @see GraphGenerator
+ *
+ */
+class BenchmarkGraphs {
+	
+	static final int AVERAGE_DEGREE = 8;
+	static final long SEED = 42;
+	
+	private BenchmarkGraphs() {
+	}
+	
+	/**
+	 * @return A new temporary file of links (deleted on exit)
+	 */
+	static File writeLinks(int nodes, String shape) throws IOException {
+		File file = File.createTempFile("pagerank-bench-", ".txt");
+		file.deleteOnExit();
+		
+		new GraphGenerator(shape, nodes, (long)nodes * AVERAGE_DEGREE, SEED).writeLinks(file.getPath());
+		
+		return file;
+	}
+	
+	/**
+	 * @return The settings of the benchmarks: default values, self links and dangling nodes ignored
+	 */
+	static PRSettings settings() {
+		PRSettings settings = new PRSettings();
+		
+		settings.setdNodesPolicy(PRMatrixPolicy.IGNORE);
+		settings.setSelfLinksPolicy(PRMatrixPolicy.IGNORE);
+		settings.setEpsilon(0.0001);
+		settings.setChunkSize(4096);
+		settings.setPartitionPolicy(PRPartitionPolicy.EDGES);
+		settings.setCompareBaseline(false);
+		settings.setConvertRunSize(16777216);
+		settings.setNodeOrder(PRNodeOrder.NONE);
+		
+		return settings;
+	}
+}
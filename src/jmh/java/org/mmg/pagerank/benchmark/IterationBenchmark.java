@@ -0,0 +1,119 @@
+package org.mmg.pagerank.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.mmg.pagerank.DecayFactorPageRank;
+import org.mmg.pagerank.PRPartitionPolicy;
+import org.mmg.pagerank.PRSettings;
+import org.mmg.pagerank.matrix.MalformedEntryException;
+import org.mmg.pagerank.matrix.PRGraph;
+import org.mmg.pagerank.matrix.PRMatrixFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The power method of DecayFactorPageRank: a single iteration (the inner loop over the
+ * incoming links) and a whole calculation from 1/N until the error rate is reached, with
+ * both partition policies.
+ *
+ * @author Manuel Medina González
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class IterationBenchmark {
+	
+	private static final int MAX_ITERATIONS = 100;
+	private static final double DAMPING_FACTOR = 0.85;
+	
+	@Param({ "100000", "1000000" })
+	public int nodes;
+	
+	@Param({ "uniform", "rmat", "preferential" })
+	public String shape;
+	
+	@Param({ "nodes", "edges" })
+	public String partition;
+	
+	private PRSettings settings;
+	private PRGraph prGraph;
+	private SingleIteration iteration;
+	private double[] previous;
+	private double[] current;
+	
+	@Setup
+	public void setUp() throws IOException, MalformedEntryException {
+		settings = BenchmarkGraphs.settings();
+		settings.setPartitionPolicy(partition.equals("nodes") ? PRPartitionPolicy.NODES : PRPartitionPolicy.EDGES);
+		
+		File links = BenchmarkGraphs.writeLinks(nodes, shape);
+		prGraph = PRMatrixFactory.buildPRGraph(links.getPath(), settings);
+		links.delete();
+		
+		iteration = new SingleIteration(prGraph, settings);
+		previous = new double[nodes];
+		current = new double[nodes];
+		Arrays.fill(previous, 1.0 / nodes);
+	}
+	
+	@TearDown
+	public void tearDown() {
+		iteration.shutdown();
+	}
+	
+	@Benchmark
+	public double singleIteration() {
+		return iteration.step(previous, current);
+	}
+	
+	@Benchmark
+	public double[] convergence() {
+		// Every calculation starts from 1/N
+		Arrays.fill(prGraph.getPageRanks(), 1.0 / nodes);
+		
+		DecayFactorPageRank prCalculator = new DecayFactorPageRank(MAX_ITERATIONS, DAMPING_FACTOR, settings.getEpsilon());
+		prCalculator.setVerbose(false);
+		prCalculator.calculatePageRank(prGraph, settings);
+		
+		return prGraph.getPageRanks();
+	}
+	
+	/**
+	 * Gives access to a single power iteration of DecayFactorPageRank, always over the
+	 * same vectors, so the time measured is that of the iteration alone.
+	 */
+	static class SingleIteration extends DecayFactorPageRank {
+		
+		SingleIteration(PRGraph prGraph, PRSettings settings) {
+			super(1, DAMPING_FACTOR, settings.getEpsilon());
+			
+			setVerbose(false);
+			prepare(prGraph, settings);
+		}
+		
+		double step(double[] previous, double[] current) {
+			return powerStep(previous, current);
+		}
+		
+		void shutdown() {
+			pool.shutdown();
+		}
+	}
+}
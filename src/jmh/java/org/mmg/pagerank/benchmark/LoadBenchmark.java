@@ -0,0 +1,99 @@
+package org.mmg.pagerank.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.mmg.pagerank.PRSettings;
+import org.mmg.pagerank.matrix.ExternalGraphBuilder;
+import org.mmg.pagerank.matrix.LinkFileParser;
+import org.mmg.pagerank.matrix.MalformedEntryException;
+import org.mmg.pagerank.matrix.PRGraph;
+import org.mmg.pagerank.matrix.PRGraphFile;
+import org.mmg.pagerank.matrix.PRMatrixFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loading a graph: parsing a file of links (LinkFileParser), building a PRGraph out of
+ * it (parsing plus CSR build), reading a graph file, and writing a graph file with the
+ * external sort of the convert mode.
+ *
+ * @author Manuel Medina González
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LoadBenchmark {
+	
+	@Param({ "100000", "1000000" })
+	public int nodes;
+	
+	@Param({ "uniform", "rmat", "preferential" })
+	public String shape;
+	
+	private PRSettings settings;
+	private File links;
+	private File graph;
+	private File converted;
+	
+	@Setup
+	public void setUp() throws IOException, MalformedEntryException {
+		settings = BenchmarkGraphs.settings();
+		links = BenchmarkGraphs.writeLinks(nodes, shape);
+		graph = File.createTempFile("pagerank-bench-", ".graph");
+		graph.deleteOnExit();
+		converted = File.createTempFile("pagerank-bench-", ".graph");
+		converted.deleteOnExit();
+		
+		PRGraph prGraph = PRMatrixFactory.buildPRGraph(links.getPath(), settings);
+		PRGraphFile.write(prGraph, false, graph.getPath());
+	}
+	
+	@TearDown
+	public void tearDown() {
+		links.delete();
+		graph.delete();
+		converted.delete();
+	}
+	
+	@Benchmark
+	public int parse() throws IOException {
+		LinkFileParser parser = new LinkFileParser(links.getPath(), false, Runtime.getRuntime().availableProcessors());
+		parser.run();
+		
+		return parser.getNumberOfLinks();
+	}
+	
+	@Benchmark
+	public PRGraph buildGraph() throws IOException, MalformedEntryException {
+		return PRMatrixFactory.buildPRGraph(links.getPath(), settings);
+	}
+	
+	@Benchmark
+	public PRGraph readGraphFile() throws IOException, MalformedEntryException {
+		return PRMatrixFactory.buildPRGraph(graph.getPath(), settings);
+	}
+	
+	@Benchmark
+	public long convert() throws IOException {
+		ExternalGraphBuilder builder = new ExternalGraphBuilder(links.getPath(), false, settings.getConvertRunSize());
+		builder.write(converted.getPath());
+		
+		return builder.getNumberOfLinks();
+	}
+}
@@ -0,0 +1,75 @@
+package org.mmg.pagerank.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.mmg.pagerank.matrix.MalformedEntryException;
+import org.mmg.pagerank.matrix.PRGraph;
+import org.mmg.pagerank.matrix.PRMatrixFactory;
+import org.mmg.pagerank.matrix.ParallelSCC;
+import org.mmg.pagerank.matrix.Tarjan;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Rank sink detection: the strongly connected components of a graph found by ParallelSCC
+ * (trimming, forward-backward search and sink classification, as in check mode) and by
+ * the sequential Tarjan algorithm.
+ *
+ * @author Manuel Medina González
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SinkBenchmark {
+	
+	@Param({ "100000", "1000000" })
+	public int nodes;
+	
+	@Param({ "uniform", "rmat", "preferential" })
+	public String shape;
+	
+	private int[] outOffsets;
+	private int[] outLinks;
+	private int[] inOffsets;
+	private int[] inLinks;
+	
+	@Setup
+	public void setUp() throws IOException, MalformedEntryException {
+		File links = BenchmarkGraphs.writeLinks(nodes, shape);
+		PRGraph prGraph = PRMatrixFactory.buildPRGraph(links.getPath(), BenchmarkGraphs.settings());
+		links.delete();
+		
+		outOffsets = prGraph.getOutLinkOffsets();
+		outLinks = prGraph.getOutLinkTargets();
+		inOffsets = prGraph.getInLinkOffsets();
+		inLinks = prGraph.getInLinkSources();
+	}
+	
+	@Benchmark
+	public boolean[] parallelSCC() {
+		ParallelSCC scc = new ParallelSCC(outOffsets, outLinks, inOffsets, inLinks, Runtime.getRuntime().availableProcessors());
+		scc.run();
+		
+		return scc.getSinks();
+	}
+	
+	@Benchmark
+	public int[] tarjan() {
+		return new Tarjan(outOffsets, outLinks).getComponentIds();
+	}
+}
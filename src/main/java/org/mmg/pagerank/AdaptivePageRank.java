@@ -0,0 +1,224 @@
+package org.mmg.pagerank;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.mmg.pagerank.matrix.PRGraph;
+
+/**
+ * Power iteration (as in DecayFactorPageRank) that stops recomputing the nodes that
+ * have converged, as described in "Adaptive Methods for the Computation of PageRank"
+ * (Kamvar et al.).
+ * <br>
+ * <br>
+ * A node is frozen once its relative change stays under settings.getAdaptiveThreshold()
+ * for settings.getAdaptiveStableIterations() consecutive iterations. Only the active nodes
+ * are calculated afterwards. The value of a frozen node is written to both rank vectors,
+ * so the active nodes keep getting its contribution (and that of the frozen dangling nodes)
+ * without it being recalculated.
+ * <br>
+ * <br>
+ * The error of an iteration is the L1 norm of the change of the active nodes.
+ *
+ * @author Manuel Medina González
+ * @see DecayFactorPageRank
+ *
+ */
+public class AdaptivePageRank extends GraphPageRankCalculator {
+	
+	public AdaptivePageRank(int maxIterations, double damping_factor, double epsilon) {
+		super(maxIterations, damping_factor, epsilon);
+	}
+	
+	public void calculatePageRank(PRGraph prGraph, PRSettings settings) {
+		BaselineComparison baseline = null;
+		
+		if (settings.isCompareBaseline()) {
+			baseline = BaselineComparison.run(prGraph, settings, prGraph.getPageRanks(), maxIterations, damping_factor, epsilon);
+		}
+		
+		long start = System.currentTimeMillis();
+		int n = prGraph.getNumberOfNodes();
+		int chunkSize = Math.max(1, settings.getChunkSize());
+		double threshold = settings.getAdaptiveThreshold();
+		int stableIterations = Math.max(1, settings.getAdaptiveStableIterations());
+		// Double buffered rank vectors, swapped between iterations
+		double[] previous = prGraph.getPageRanks();
+		double[] current = previous.clone();
+		
+		// Ids of the nodes still calculated, nActive first positions used
+		int[] active = new int[n];
+		int nActive = n;
+		for (int v = 0; v < n; v++) {
+			active[v] = v;
+		}
+		// Consecutive iterations each node has changed less than the threshold
+		int[] stable = new int[n];
+		// Total number of node updates, to compare with n per iteration
+		long nUpdates = 0;
+		
+		DanglingMass dm = new DanglingMass(n, settings);
+		ForkJoinPool pool = new ForkJoinPool(NTHREADS);
+		
+		if (verbose) {
+			logger.info("Number of threads: " + NTHREADS);
+			logger.info("Freezing nodes whose relative change is under " + threshold + " for " + stableIterations + " iterations");
+		}
+		
+		int cntIterations = 0;
+		double currentError = 1.0;
+		
+		// Main loop
+		while (cntIterations < maxIterations && currentError > epsilon && nActive > 0) {
+			// Frozen dangling nodes keep their value in previous, so they are included
+			double danglingMass = dm.total(previous, prGraph.getDanglingNodes());
+			
+			currentError = pool.invoke(new ActivePageRankCalculator(prGraph, dm, danglingMass, damping_factor, previous, current,
+					                                                    active, stable, threshold, 0, nActive, chunkSize));
+			nUpdates += nActive;
+			
+			// Keeps the order of the remaining nodes, so the ranges stay mostly contiguous
+			int nRemaining = 0;
+			for (int i = 0; i < nActive; i++) {
+				int v = active[i];
+				
+				if (stable[v] >= stableIterations) {
+					// Frozen: both vectors hold its last value from now on
+					previous[v] = current[v];
+				}
+				else {
+					active[nRemaining++] = v;
+				}
+			}
+			
+			double[] tmp = previous;
+			previous = current;
+			current = tmp;
+			
+			logIteration(cntIterations + 1, currentError, previous);
+			if (verbose) {
+				logger.info("Active nodes: " + nActive + " (" + (nActive - nRemaining) + " frozen)");
+			}
+			nActive = nRemaining;
+			cntIterations += 1;
+		}
+		
+		pool.shutdown();
+		
+		// The latest values are in previous after the last swap
+		if (previous != prGraph.getPageRanks()) {
+			System.arraycopy(previous, 0, prGraph.getPageRanks(), 0, n);
+		}
+		
+		long elapsed = System.currentTimeMillis() - start;
+		
+		logFinished(prGraph, cntIterations);
+		logger.info("Node updates: " + nUpdates + " (" + ((long)n * cntIterations) + " without freezing). Total time: " + elapsed + " ms");
+		
+		if (baseline != null) {
+			baseline.log("Adaptive power method", cntIterations, elapsed, prGraph.getPageRanks());
+		}
+	}
+}
+
+/**
+ * Calculates the current pagerank of a range of the active nodes, splitting it
+ * into halves until it is no larger than the chunk size.
+ * <br>
+ * Updates the number of consecutive iterations each node has stayed under the threshold.
+ * Returns the L1 norm between the previous values of the range and the current ones.
+ *
+ * @author Manuel Medina González
+ *
+ */
+class ActivePageRankCalculator extends RecursiveTask<Double> {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private PRGraph prGraph;
+	private DanglingMass dm;
+	private double danglingMass;
+	private double damping_factor;
+	private double[] previous;
+	private double[] current;
+	private int[] active;
+	private int[] stable;
+	private double threshold;
+	// Range of positions of the active array [from, to)
+	private int from;
+	private int to;
+	private int chunkSize;
+	
+	public ActivePageRankCalculator(PRGraph prGraph,
+			                            DanglingMass dm,
+			                            double danglingMass,
+			                            double damping_factor,
+			                            double[] previous,
+			                            double[] current,
+			                            int[] active,
+			                            int[] stable,
+			                            double threshold,
+			                            int from,
+			                            int to,
+			                            int chunkSize) {
+		this.prGraph = prGraph;
+		this.dm = dm;
+		this.danglingMass = danglingMass;
+		this.damping_factor = damping_factor;
+		this.previous = previous;
+		this.current = current;
+		this.active = active;
+		this.stable = stable;
+		this.threshold = threshold;
+		this.from = from;
+		this.to = to;
+		this.chunkSize = chunkSize;
+	}
+	
+	@Override
+	protected Double compute() {
+		if (to - from > chunkSize) {
+			int middle = (from + to) >>> 1;
+			ActivePageRankCalculator left = new ActivePageRankCalculator(prGraph, dm, danglingMass, damping_factor, previous, current,
+					                                                       active, stable, threshold, from, middle, chunkSize);
+			ActivePageRankCalculator right = new ActivePageRankCalculator(prGraph, dm, danglingMass, damping_factor, previous, current,
+					                                                        active, stable, threshold, middle, to, chunkSize);
+			left.fork();
+			double rightError = right.compute();
+			
+			return left.join() + rightError;
+		}
+		
+		int n = prGraph.getNumberOfNodes();
+		int[] offsets = prGraph.getInLinkOffsets();
+		int[] sources = prGraph.getInLinkSources();
+		int[] outDegree = prGraph.getOutDegrees();
+		double error = 0.0;
+		
+		for (int i = from; i < to; i++) {
+			int v = active[i];
+			double tempCalc = 0.0;
+			
+			for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+				tempCalc += previous[sources[e]] / outDegree[sources[e]];
+			}
+			
+			// Handling dangling nodes = KEEP
+			tempCalc += dm.contribution(danglingMass, previous[v], outDegree[v] == 0);
+			
+			current[v] = damping_factor * tempCalc + (1 - damping_factor) / n;
+			
+			double delta = Math.abs(current[v] - previous[v]);
+			error += delta;
+			
+			if (delta <= threshold * current[v]) {
+				stable[v] += 1;
+			}
+			else {
+				stable[v] = 0;
+			}
+		}
+		
+		return error;
+	}
+}
@@ -0,0 +1,101 @@
+package org.mmg.pagerank;
+
+import org.mmg.pagerank.matrix.PRGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the plain power method (DecayFactorPageRank) over a graph, so that other
+ * calculators can compare their number of iterations, time and results against it.
+ * Any other calculator can be run instead, such as a calculation from 1/N to compare
+ * with one starting from previous values.
+ * <br>
+ * Only used when compare.baseline = true, as it performs a whole extra calculation.
+ * 
+ * @author Manuel Medina González
+ *
+ */
+class BaselineComparison {
+
+	private String name;
+	private int iterations;
+	private long elapsed;
+	private double[] pageRanks;
+	private Logger logger = LoggerFactory.getLogger(BaselineComparison.class);
+	
+	private BaselineComparison() {
+	}
+	
+	/**
+	 * Runs the power method starting from the given values. The current values of the graph
+	 * are restored afterwards.
+	 */
+	public static BaselineComparison run(PRGraph prGraph, PRSettings settings, double[] initialPageRanks,
+			                             int maxIterations, double damping_factor, double epsilon) {
+		return run(prGraph, settings, initialPageRanks, "Power method", new DecayFactorPageRank(maxIterations, damping_factor, epsilon));
+	}
+	
+	/**
+	 * Runs the given calculator starting from the given values. The current values of the graph
+	 * are restored afterwards.
+	 */
+	public static BaselineComparison run(PRGraph prGraph, PRSettings settings, double[] initialPageRanks,
+			                             String name, GraphPageRankCalculator prCalculator) {
+		BaselineComparison baseline = new BaselineComparison();
+		double[] pageRanks = prGraph.getPageRanks();
+		double[] saved = pageRanks.clone();
+		
+		System.arraycopy(initialPageRanks, 0, pageRanks, 0, pageRanks.length);
+		
+		baseline.name = name;
+		prCalculator.setVerbose(false);
+		// The calculator must not run a comparison of its own
+		boolean compareBaseline = settings.isCompareBaseline();
+		settings.setCompareBaseline(false);
+		
+		long start = System.currentTimeMillis();
+		prCalculator.calculatePageRank(prGraph, settings);
+		baseline.elapsed = System.currentTimeMillis() - start;
+		baseline.iterations = prCalculator.getIterations();
+		baseline.pageRanks = pageRanks.clone();
+		
+		settings.setCompareBaseline(compareBaseline);
+		System.arraycopy(saved, 0, pageRanks, 0, pageRanks.length);
+		
+		return baseline;
+	}
+	
+	public int getIterations() {
+		return iterations;
+	}
+	
+	public long getElapsed() {
+		return elapsed;
+	}
+	
+	/**
+	 * @return The L1 norm of the difference between the baseline results and the given ones
+	 */
+	public double getError(double[] pageRanks) {
+		double error = 0.0;
+		for (int v = 0; v < pageRanks.length; v++) {
+			error += Math.abs(pageRanks[v] - this.pageRanks[v]);
+		}
+		
+		return error;
+	}
+	
+	/**
+	 * Shows the number of iterations and time of both calculations, along with the
+	 * difference between their results.
+	 */
+	public void log(String name, int iterations, long elapsed, double[] pageRanks) {
+		logger.info(" ===== Comparison with " + this.name + " ===== ");
+		logger.info(this.name + ": " + this.iterations + " iterations, " + this.elapsed + " ms");
+		logger.info(name + ": " + iterations + " iterations, " + elapsed + " ms");
+		if (iterations > 0) {
+			logger.info("Iterations ratio: " + ((double)this.iterations / iterations));
+		}
+		logger.info("L1 difference between the results: " + getError(pageRanks));
+	}
+}
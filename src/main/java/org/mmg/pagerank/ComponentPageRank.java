@@ -0,0 +1,310 @@
+package org.mmg.pagerank;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.mmg.pagerank.matrix.PRGraph;
+import org.mmg.pagerank.matrix.Tarjan;
+
+/**
+ * Solves the pagerank equations one strongly connected component (SCC) at a time,
+ * following the topological order of the condensation of the graph: once the
+ * components linking to a component are done, its incoming pagerank is final, so it
+ * only iterates until its own values converge. Components without cycles (a single
+ * node without self link) are calculated in a single pass.
+ * <br>
+ * <br>
+ * The components are grouped in levels (the longest chain of components linking to
+ * them). Components of the same level don't depend on each other and are calculated
+ * in parallel on a ForkJoinPool.
+ * <br>
+ * <br>
+ * The dangling nodes (dangling.nodes.policy = keep) link to every node, which would
+ * join the whole graph in a single component. As their contribution is the same for
+ * every node, the values are calculated up to a scale factor instead:
+ * <br>
+ * <br>
+ * z(i) = decay_factor * (Sum(z(j)/N(j)) - o(i) * z(i)) + 1
+ * <br>
+ * <br>
+ * Where o(i) is the part of its own pagerank a dangling node does not get back (see
+ * DanglingMass.ownShare()). Then r(i) = c * z(i), with
+ * c = ((1 - decay_factor) / m) / (1 - decay_factor * s * Sum(z(d))), s being the part of
+ * the pagerank of the dangling nodes d that goes to each node.
+ *
+ * @author Manuel Medina González
+ * @see DecayFactorPageRank
+ * @see Tarjan
+ *
+ */
+public class ComponentPageRank extends GraphPageRankCalculator {
+	
+	public ComponentPageRank(int maxIterations, double damping_factor, double epsilon) {
+		super(maxIterations, damping_factor, epsilon);
+	}
+	
+	public void calculatePageRank(PRGraph prGraph, PRSettings settings) {
+		BaselineComparison baseline = null;
+		
+		if (settings.isCompareBaseline()) {
+			baseline = BaselineComparison.run(prGraph, settings, prGraph.getPageRanks(), maxIterations, damping_factor, epsilon);
+		}
+		
+		long start = System.currentTimeMillis();
+		int n = prGraph.getNumberOfNodes();
+		int[] offsets = prGraph.getInLinkOffsets();
+		int[] sources = prGraph.getInLinkSources();
+		int chunkSize = Math.max(1, settings.getChunkSize());
+		double[] pageRanks = prGraph.getPageRanks();
+		// Teleport term of each node, the scale of z
+		double teleport = (1 - damping_factor) / n;
+		
+		// Over the incoming links, so the components linking to another one get a lower number
+		Tarjan tarjan = new Tarjan(offsets, sources);
+		int[] component = tarjan.getComponentIds();
+		int nComponents = tarjan.getNumberOfComponents();
+		
+		// Nodes grouped by component: componentNodes[componentOffsets[c]] ... componentNodes[componentOffsets[c + 1] - 1]
+		int[] componentOffsets = new int[nComponents + 1];
+		int[] componentNodes = new int[n];
+		groupBy(component, nComponents, componentOffsets, componentNodes);
+		
+		// Level of each component: 0 if no other component links to it
+		int[] level = new int[nComponents];
+		int nLevels = 0;
+		for (int c = 0; c < nComponents; c++) {
+			for (int i = componentOffsets[c]; i < componentOffsets[c + 1]; i++) {
+				int v = componentNodes[i];
+				for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+					int source = component[sources[e]];
+					if (source != c) {
+						level[c] = Math.max(level[c], level[source] + 1);
+					}
+				}
+			}
+			nLevels = Math.max(nLevels, level[c] + 1);
+		}
+		
+		// Components grouped by level
+		int[] levelOffsets = new int[nLevels + 1];
+		int[] levelComponents = new int[nComponents];
+		groupBy(level, nLevels, levelOffsets, levelComponents);
+		
+		// Starting from the current values
+		double[] z = new double[n];
+		for (int v = 0; v < n; v++) {
+			z[v] = pageRanks[v] / teleport;
+		}
+		
+		DanglingMass dm = new DanglingMass(n, settings);
+		int[] sweeps = new int[nComponents];
+		ForkJoinPool pool = new ForkJoinPool(NTHREADS);
+		
+		if (verbose) {
+			logger.info("Number of threads: " + NTHREADS);
+			logger.info("Strongly connected components: " + nComponents + " in " + nLevels + " levels");
+		}
+		
+		long nUpdates = 0;
+		for (int l = 0; l < nLevels; l++) {
+			// invoke() only returns once all the components of the level are done
+			nUpdates += pool.invoke(new ComponentCalculator(prGraph, dm, damping_factor, epsilon / (n * teleport), maxIterations, z,
+					                                            componentOffsets, componentNodes, levelComponents, sweeps,
+					                                            levelOffsets[l], levelOffsets[l + 1], chunkSize));
+		}
+		
+		pool.shutdown();
+		
+		double danglingZ = 0.0;
+		for (int d : prGraph.getDanglingNodes()) {
+			danglingZ += z[d];
+		}
+		
+		double scale = teleport / (1 - damping_factor * dm.share() * danglingZ);
+		for (int v = 0; v < n; v++) {
+			pageRanks[v] = scale * z[v];
+		}
+		
+		int maxSweeps = 0;
+		int nCyclic = 0;
+		for (int c = 0; c < nComponents; c++) {
+			maxSweeps = Math.max(maxSweeps, sweeps[c]);
+			if (sweeps[c] > 1) {
+				nCyclic++;
+			}
+		}
+		
+		long elapsed = System.currentTimeMillis() - start;
+		
+		logFinished(prGraph, maxSweeps);
+		logger.info("Components iterated more than once: " + nCyclic + ". Node updates: " + nUpdates + ". Total time: " + elapsed + " ms");
+		
+		if (baseline != null) {
+			baseline.log("Component by component", maxSweeps, elapsed, pageRanks);
+		}
+	}
+	
+	/*
+	 * O(n + nGroups)
+	 *
+	 * Counting sort of the indexes 0 .. keys.length - 1 by their key
+	 */
+	private static void groupBy(int[] keys, int nGroups, int[] groupOffsets, int[] grouped) {
+		for (int key : keys) {
+			groupOffsets[key + 1]++;
+		}
+		
+		for (int g = 0; g < nGroups; g++) {
+			groupOffsets[g + 1] += groupOffsets[g];
+		}
+		
+		int[] next = groupOffsets.clone();
+		for (int i = 0; i < keys.length; i++) {
+			grouped[next[keys[i]]++] = i;
+		}
+	}
+}
+
+/**
+ * Calculates the scaled pagerank values (see ComponentPageRank) of a range of the
+ * components of a level, splitting it into halves until it contains a single
+ * component or no more than chunk size nodes.
+ * <br>
+ * The nodes of each component are updated in place and in order, until the L1 norm
+ * of their change is no larger than the error rate times the size of the component.
+ * Returns the number of node updates.
+ *
+ * @author Manuel Medina González
+ *
+ */
+class ComponentCalculator extends RecursiveTask<Long> {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private PRGraph prGraph;
+	private DanglingMass dm;
+	private double damping_factor;
+	// Error rate per node, in the scale of z
+	private double epsilon;
+	private int maxIterations;
+	private double[] z;
+	private int[] componentOffsets;
+	private int[] componentNodes;
+	private int[] levelComponents;
+	private int[] sweeps;
+	// Range of positions of levelComponents [from, to)
+	private int from;
+	private int to;
+	private int chunkSize;
+	
+	public ComponentCalculator(PRGraph prGraph,
+			                       DanglingMass dm,
+			                       double damping_factor,
+			                       double epsilon,
+			                       int maxIterations,
+			                       double[] z,
+			                       int[] componentOffsets,
+			                       int[] componentNodes,
+			                       int[] levelComponents,
+			                       int[] sweeps,
+			                       int from,
+			                       int to,
+			                       int chunkSize) {
+		this.prGraph = prGraph;
+		this.dm = dm;
+		this.damping_factor = damping_factor;
+		this.epsilon = epsilon;
+		this.maxIterations = maxIterations;
+		this.z = z;
+		this.componentOffsets = componentOffsets;
+		this.componentNodes = componentNodes;
+		this.levelComponents = levelComponents;
+		this.sweeps = sweeps;
+		this.from = from;
+		this.to = to;
+		this.chunkSize = chunkSize;
+	}
+	
+	@Override
+	protected Long compute() {
+		if (to - from > 1 && size(from, to) > chunkSize) {
+			int middle = (from + to) >>> 1;
+			ComponentCalculator left = new ComponentCalculator(prGraph, dm, damping_factor, epsilon, maxIterations, z,
+					                                               componentOffsets, componentNodes, levelComponents, sweeps,
+					                                               from, middle, chunkSize);
+			ComponentCalculator right = new ComponentCalculator(prGraph, dm, damping_factor, epsilon, maxIterations, z,
+					                                                componentOffsets, componentNodes, levelComponents, sweeps,
+					                                                middle, to, chunkSize);
+			left.fork();
+			long rightUpdates = right.compute();
+			
+			return left.join() + rightUpdates;
+		}
+		
+		long nUpdates = 0;
+		for (int i = from; i < to; i++) {
+			nUpdates += solve(levelComponents[i]);
+		}
+		
+		return nUpdates;
+	}
+	
+	/*
+	 * Number of nodes in the components of the range [first, last)
+	 */
+	private int size(int first, int last) {
+		int size = 0;
+		for (int i = first; i < last; i++) {
+			int c = levelComponents[i];
+			size += componentOffsets[c + 1] - componentOffsets[c];
+		}
+		
+		return size;
+	}
+	
+	private long solve(int c) {
+		int[] offsets = prGraph.getInLinkOffsets();
+		int[] sources = prGraph.getInLinkSources();
+		int[] outDegree = prGraph.getOutDegrees();
+		int first = componentOffsets[c];
+		int last = componentOffsets[c + 1];
+		double tolerance = epsilon * (last - first);
+		// A single node is only part of a cycle if it has a self link
+		boolean cyclic = last - first > 1;
+		
+		if (!cyclic) {
+			int v = componentNodes[first];
+			for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+				cyclic |= sources[e] == v;
+			}
+		}
+		
+		int cntSweeps = 0;
+		double change;
+		
+		do {
+			change = 0.0;
+			
+			for (int i = first; i < last; i++) {
+				int v = componentNodes[i];
+				double tempCalc = 0.0;
+				
+				for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+					tempCalc += z[sources[e]] / outDegree[sources[e]];
+				}
+				
+				// The share of its own value a dangling node doesn't get back is moved to the left side
+				double current = (damping_factor * tempCalc + 1) / (1 + damping_factor * dm.ownShare(outDegree[v] == 0));
+				
+				change += Math.abs(current - z[v]);
+				z[v] = current;
+			}
+			
+			cntSweeps++;
+		} while (cyclic && change > tolerance && cntSweeps < maxIterations);
+		
+		sweeps[c] = cntSweeps;
+		
+		return (long)cntSweeps * (last - first);
+	}
+}
@@ -0,0 +1,206 @@
+package org.mmg.pagerank;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.mmg.pagerank.matrix.CompressedInLinks;
+import org.mmg.pagerank.matrix.PRGraph;
+
+/**
+ * Same iterations as DecayFactorPageRank, but the incoming links are read from their
+ * compressed form (see CompressedInLinks) instead of the int array of the PRGraph. The
+ * sources of each node are decoded on the fly in the inner loop, so an iteration reads
+ * the bytes of the gaps instead of 4 bytes per link.
+ * <br>
+ * <br>
+ * The values are the same as those of DecayFactorPageRank (same sums in the same order,
+ * as the sources of the nodes are sorted). The compressed links are built on the first
+ * calculation and kept by the graph.
+ * <br>
+ * <br>
+ * With compare.baseline = true, the time of DecayFactorPageRank over the uncompressed
+ * links is shown along with the compressed one.
+ *
+ * @author Manuel Medina González
+ * @see DecayFactorPageRank
+ * @see CompressedInLinks
+ *
+ */
+public class CompressedPageRank extends GraphPageRankCalculator {
+	
+	public CompressedPageRank(int maxIterations, double damping_factor, double epsilon) {
+		super(maxIterations, damping_factor, epsilon);
+	}
+	
+	public void calculatePageRank(PRGraph prGraph, PRSettings settings) {
+		BaselineComparison baseline = null;
+		
+		if (settings.isCompareBaseline()) {
+			baseline = BaselineComparison.run(prGraph, settings, prGraph.getPageRanks(), maxIterations, damping_factor, epsilon);
+		}
+		
+		long start = System.currentTimeMillis();
+		int n = prGraph.getNumberOfNodes();
+		int chunkSize = Math.max(1, settings.getChunkSize());
+		CompressedInLinks inLinks = prGraph.getCompressedInLinks();
+		long built = System.currentTimeMillis();
+		// Double buffered rank vectors, swapped between iterations
+		double[] previous = prGraph.getPageRanks();
+		double[] current = new double[n];
+		
+		DanglingMass dm = new DanglingMass(n, settings);
+		ForkJoinPool pool = new ForkJoinPool(NTHREADS);
+		
+		if (verbose) {
+			logger.info("Number of threads: " + NTHREADS);
+			logger.info("Compressed links: " + (inLinks.getMemorySize() >> 10) + " KB ("
+					    + String.format("%.2f", inLinks.getBitsPerLink()) + " bits per link, 32 uncompressed). Built in "
+					    + (built - start) + " ms");
+		}
+		
+		int cntIterations = 0;
+		double currentError = 1.0;
+		
+		// Main loop
+		while (cntIterations < maxIterations && currentError > epsilon) {
+			double danglingMass = dm.total(previous, prGraph.getDanglingNodes());
+			
+			currentError = pool.invoke(new CompressedPageRankCalculator(prGraph, inLinks, dm, danglingMass, damping_factor,
+					                                                        previous, current, 0, n, chunkSize));
+			
+			double[] tmp = previous;
+			previous = current;
+			current = tmp;
+			
+			logIteration(cntIterations + 1, currentError, previous);
+			cntIterations += 1;
+		}
+		
+		pool.shutdown();
+		
+		// The latest values are in previous after the last swap
+		if (previous != prGraph.getPageRanks()) {
+			System.arraycopy(previous, 0, prGraph.getPageRanks(), 0, n);
+		}
+		
+		long end = System.currentTimeMillis();
+		long nLinks = (long)prGraph.getNumberOfEdges() * cntIterations;
+		
+		logFinished(prGraph, cntIterations);
+		logger.info("Bits per link: " + String.format("%.2f", inLinks.getBitsPerLink()) + ". Iterations: " + (end - built) + " ms ("
+				    + (end > built ? nLinks * 1000 / (end - built) : 0) + " links per second). Total time: " + (end - start) + " ms");
+		
+		if (baseline != null) {
+			baseline.log("Compressed links", cntIterations, end - start, prGraph.getPageRanks());
+		}
+	}
+}
+
+/**
+ * Calculates the current pagerank of a contiguous range of nodes out of the compressed
+ * incoming links, splitting it into halves until it is no larger than the chunk size.
+ * The positions of the compressed links give the start of any node, so the chunks are
+ * independent.
+ * <br>
+ * Returns the L1 norm between the previous values of the range and the current ones.
+ *
+ * @author Manuel Medina González
+ *
+ */
+class CompressedPageRankCalculator extends RecursiveTask<Double> {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private PRGraph prGraph;
+	private CompressedInLinks inLinks;
+	private DanglingMass dm;
+	private double danglingMass;
+	private double damping_factor;
+	// Values of the previous iteration (read only) and the current one
+	private double[] previous;
+	private double[] current;
+	// Range of node ids [from, to)
+	private int from;
+	private int to;
+	private int chunkSize;
+	
+	public CompressedPageRankCalculator(PRGraph prGraph,
+			                                CompressedInLinks inLinks,
+			                                DanglingMass dm,
+			                                double danglingMass,
+			                                double damping_factor,
+			                                double[] previous,
+			                                double[] current,
+			                                int from,
+			                                int to,
+			                                int chunkSize) {
+		this.prGraph = prGraph;
+		this.inLinks = inLinks;
+		this.dm = dm;
+		this.danglingMass = danglingMass;
+		this.damping_factor = damping_factor;
+		this.previous = previous;
+		this.current = current;
+		this.from = from;
+		this.to = to;
+		this.chunkSize = chunkSize;
+	}
+	
+	@Override
+	protected Double compute() {
+		if (to - from > chunkSize) {
+			int middle = (from + to) >>> 1;
+			CompressedPageRankCalculator left = new CompressedPageRankCalculator(prGraph, inLinks, dm, danglingMass, damping_factor,
+					                                                               previous, current, from, middle, chunkSize);
+			CompressedPageRankCalculator right = new CompressedPageRankCalculator(prGraph, inLinks, dm, danglingMass, damping_factor,
+					                                                                previous, current, middle, to, chunkSize);
+			left.fork();
+			double rightError = right.compute();
+			
+			return left.join() + rightError;
+		}
+		
+		int n = prGraph.getNumberOfNodes();
+		byte[] data = inLinks.getData();
+		int[] positions = inLinks.getPositions();
+		int[] outDegree = prGraph.getOutDegrees();
+		double error = 0.0;
+		int p = positions[from];
+		
+		for (int v = from; v < to; v++) {
+			double tempCalc = 0.0;
+			int end = positions[v + 1];
+			// The first gap is relative to v
+			int source = v;
+			boolean first = true;
+			
+			while (p < end) {
+				// Variable length integer, most gaps take a single byte
+				int b = data[p++];
+				int value = b & 0x7f;
+				for (int shift = 7; b < 0; shift += 7) {
+					b = data[p++];
+					value |= (b & 0x7f) << shift;
+				}
+				
+				if (first) {
+					source += (value >>> 1) ^ -(value & 1);
+					first = false;
+				}
+				else {
+					source += value + 1;
+				}
+				
+				tempCalc += previous[source] / outDegree[source];
+			}
+			
+			// Handling dangling nodes = KEEP
+			tempCalc += dm.contribution(danglingMass, previous[v], outDegree[v] == 0);
+			
+			current[v] = damping_factor * tempCalc + (1 - damping_factor) / n;
+			error += Math.abs(current[v] - previous[v]);
+		}
+		
+		return error;
+	}
+}
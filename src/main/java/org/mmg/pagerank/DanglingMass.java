@@ -0,0 +1,87 @@
+package org.mmg.pagerank;
+
+import org.mmg.pagerank.matrix.PRMatrixPolicy;
+
+/**
+ * Handles the dangling nodes (rank leaks) when dangling.nodes.policy = keep.
+ * <br>
+ * A dangling node is assumed to link to every URL (itself included only if self links
+ * are kept). Instead of adding those links, the total pagerank of the dangling nodes is
+ * computed once per iteration and spread uniformly, so keeping dangling nodes costs
+ * the same as ignoring them.
+ * 
+ * @author Manuel Medina González
+ *
+ */
+class DanglingMass {
+	
+	private boolean keep;
+	private boolean keepSelfLinks;
+	// Number of links assumed for each dangling node
+	private int danglingOutDegree;
+	
+	public DanglingMass(int n, PRSettings settings) {
+		keep = settings.getdNodesPolicy() == PRMatrixPolicy.KEEP;
+		keepSelfLinks = settings.getSelfLinksPolicy() == PRMatrixPolicy.KEEP;
+		danglingOutDegree = keepSelfLinks ? n : n - 1;
+	}
+	
+	/**
+	 * @return The sum of the pagerank values of the dangling nodes, or 0 if they are ignored
+	 */
+	public double total(double[] pageRanks, int[] danglingNodes) {
+		double total = 0.0;
+		
+		if (keep) {
+			for (int d : danglingNodes) {
+				total += pageRanks[d];
+			}
+		}
+		
+		return total;
+	}
+	
+	/**
+	 * @param total The value returned by total()
+	 * @param ownRank The pagerank of the node receiving the contribution
+	 * @param ownDangling Whether that node is a dangling node itself
+	 * @return The part of the dangling nodes' pagerank that goes to the node
+	 */
+	public double contribution(double total, double ownRank, boolean ownDangling) {
+		if (!keep || danglingOutDegree == 0) {
+			return 0.0;
+		}
+		
+		// A dangling node does not link to itself if self links are ignored
+		if (ownDangling && !keepSelfLinks) {
+			return (total - ownRank) / danglingOutDegree;
+		}
+		
+		return total / danglingOutDegree;
+	}
+	
+	/**
+	 * contribution(total, ownRank, ownDangling) = share() * total - ownShare(ownDangling) * ownRank
+	 * 
+	 * @return The part of the total that goes to each node
+	 */
+	public double share() {
+		if (!keep || danglingOutDegree == 0) {
+			return 0.0;
+		}
+		
+		return 1.0 / danglingOutDegree;
+	}
+	
+	/**
+	 * @param ownDangling Whether the node receiving the contribution is a dangling node itself
+	 * @return The part of its own pagerank that a node does not get back
+	 */
+	public double ownShare(boolean ownDangling) {
+		if (ownDangling && !keepSelfLinks) {
+			return share();
+		}
+		
+		return 0.0;
+	}
+}
@@ -1,20 +1,11 @@
 package org.mmg.pagerank;
 
-import java.util.HashSet;
-import java.util.Map.Entry;
-import java.util.concurrent.Callable;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import org.mmg.pagerank.matrix.PRMatrix;
-import org.mmg.pagerank.matrix.PRMatrixEntry;
-import org.mmg.pagerank.matrix.PRMatrixPolicy;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
 
-import com.rits.cloning.Cloner;
+import org.mmg.pagerank.matrix.PRGraph;
 
 /**
  * Implements the Random Surfer pagerank calculation: Uses a decay factor to
@@ -23,185 +14,499 @@ import com.rits.cloning.Cloner;
  * @author Manuel Medina González
  *
  */
-public class DecayFactorPageRank implements PageRankCalculator {
+public class DecayFactorPageRank extends GraphPageRankCalculator {
 
 	// To define a thread pool
-	private ExecutorService executor;
-	private static final int NTHREADS = Runtime.getRuntime().availableProcessors();
-	private int maxIterations;
-	private double damping_factor;
-	// Error rate
-	private double epsilon;
-	private Logger logger = LoggerFactory.getLogger(DecayFactorPageRank.class);
+	protected ForkJoinPool pool;
+	// Set up by prepare()
+	private PRGraph prGraph;
+	private int chunkSize;
+	private DanglingMass dm;
+	private ThreadWorkCounter counter;
+	private EdgeRangePageRankCalculator.Partition partition;
 	
 	public DecayFactorPageRank(int maxIterations, double damping_factor, double epsilon) {
-		executor = Executors.newFixedThreadPool(NTHREADS); 
+		super(maxIterations, damping_factor, epsilon);
 		
-		this.maxIterations = maxIterations;
-		this.damping_factor = damping_factor;
-		this.epsilon = epsilon;
+		pool = new ForkJoinPool(NTHREADS); 
 	}
 	
-	
-	public void calculatePageRank(PRMatrix prMatrix, PRSettings settings) {
-		ErrorComputer ec = new ErrorComputer(prMatrix);
-		
-		// To control threads calculating pageranks
-		CountDownLatch cdLatch = null;
+	/*
+	 * The work is split into contiguous chunks that are calculated by the workers of a
+	 * ForkJoinPool: either settings.getChunkSize() nodes per chunk (NODES policy), or
+	 * about settings.getChunkSize() incoming links and nodes per chunk (EDGES policy).
+	 * Each iteration waits for all the chunks before swapping the rank vectors, so
+	 * scheduling is done per chunk instead of per node.
+	 */
+	public void calculatePageRank(PRGraph prGraph, PRSettings settings) {
+		int n = prGraph.getNumberOfNodes();
+		// Double buffered rank vectors, swapped between iterations
+		double[] previous = prGraph.getPageRanks();
+		double[] current = new double[n];
 		
-		logger.trace("Number of processors: " + NTHREADS);
+		prepare(prGraph, settings);
 		
 		int cntIterations = 0;
 		double currentError = 1.0;
 		
 		// Main loop
 		while (cntIterations < maxIterations && currentError > epsilon) {
-			// in case there are less links than processors
-			cdLatch = new CountDownLatch(Math.min(NTHREADS, prMatrix.getNumberOfLinks()));
-			ec.setPreviousMatrix(prMatrix);
-											
-			for (String url: prMatrix.getAllURLs()) {
-				executor.execute(new TemporaryPageRankCalculator(url, prMatrix, settings, damping_factor, cdLatch));
-			}
-						
-			
-			try {
-				cdLatch.await();
-			} catch (InterruptedException e) {
-				logger.error("Error: " + e.getMessage());
-			}
+			currentError = powerStep(previous, current);
 			
-			Future<Double> fError = executor.submit(ec);
+			double[] tmp = previous;
+			previous = current;
+			current = tmp;
 			
-			try {
-				currentError = fError.get();
-			} catch (InterruptedException | ExecutionException e) {
-				logger.error("Error: " + e.getMessage());
+			logIteration(cntIterations + 1, currentError, previous);
+			if (verbose) {
+				logger.info("Links per thread: " + counter + " Imbalance: " + counter.getImbalance());
 			}
-			
-			
-			logger.info(" ========= Iteration " + (cntIterations + 1) + " ========= ");
-			prMatrix.printPageRanks();
-			logger.info("Current error rate: " + currentError + System.getProperty("line.separator"));
 			cntIterations += 1;
 		}
 		
-		executor.shutdown();
+		pool.shutdown();
+		
+		// The latest values are in previous after the last swap
+		if (previous != prGraph.getPageRanks()) {
+			System.arraycopy(previous, 0, prGraph.getPageRanks(), 0, n);
+		}
+		
+		logFinished(prGraph, cntIterations);
+	}
+	
+	/*
+	 * Sets up what the iterations over the given graph need
+	 */
+	protected void prepare(PRGraph prGraph, PRSettings settings) {
+		int n = prGraph.getNumberOfNodes();
+		
+		this.prGraph = prGraph;
+		chunkSize = Math.max(1, settings.getChunkSize());
+		dm = new DanglingMass(n, settings);
+		counter = new ThreadWorkCounter(NTHREADS);
+		partition = null;
+		
+		if (settings.getPartitionPolicy() == PRPartitionPolicy.EDGES) {
+			partition = EdgeRangePageRankCalculator.createPartition(prGraph, chunkSize);
+		}
+		
+		if (verbose) {
+			logger.info("Number of threads: " + NTHREADS);
+			if (partition != null) {
+				logger.info("Chunk size: " + chunkSize + " links and nodes (" + partition.size() + " chunks)");
+			}
+			else {
+				logger.info("Chunk size: " + chunkSize + " nodes (" + ((n + chunkSize - 1) / chunkSize) + " chunks)");
+			}
+		}
+	}
+	
+	/*
+	 * One power iteration: calculates the current values out of the previous ones.
+	 * Returns the L1 norm of the difference between them.
+	 */
+	protected double powerStep(double[] previous, double[] current) {
+		// Computed once for all the nodes
+		double danglingMass = dm.total(previous, prGraph.getDanglingNodes());
+		double currentError;
+		counter.reset();
 		
-		logger.info(" ===== Execution finished. Total number of iterations performed: " + cntIterations + " ====");
+		// invoke() only returns once all the chunks are done: this is the iteration barrier
+		if (partition != null) {
+			currentError = pool.invoke(new EdgeRangePageRankCalculator(prGraph, partition, dm, danglingMass, damping_factor,
+					                                                       previous, current, counter, 0, partition.size()));
+			// Nodes whose incoming links were split among chunks
+			currentError += partition.reduce(prGraph, dm, danglingMass, damping_factor, previous, current);
+		}
+		else {
+			currentError = pool.invoke(new TemporaryPageRankCalculator(prGraph, dm, danglingMass, damping_factor,
+					                                                       previous, current, counter, 0, prGraph.getNumberOfNodes(), chunkSize));
+		}
 		
+		return currentError;
 	}
 }
 
 /**
- * Calculates the current pagerank of a URL
+ * Calculates the current pagerank of a contiguous range of nodes, splitting it
+ * into halves until it is no larger than the chunk size.
+ * <br>
+ * Returns the L1 norm between the previous values of the range and the current ones,
+ * so the error rate is reduced along with the tasks.
+ * 
  * @author Manuel Medina González
  *
  */
-class TemporaryPageRankCalculator implements Runnable {
-	private PRMatrix prMatrix;
-	private PRSettings settings;
-	private String url;
-	private CountDownLatch cdLatch;
-	private double damping_factor;
+class TemporaryPageRankCalculator extends RecursiveTask<Double> {
+	
+	private static final long serialVersionUID = 1L;
 	
-	private Logger logger = LoggerFactory.getLogger("rootLogger");
+	private PRGraph prGraph;
+	private DanglingMass dm;
+	private double danglingMass;
+	private double damping_factor;
+	// Values of the previous iteration (read only) and the current one
+	private double[] previous;
+	private double[] current;
+	private ThreadWorkCounter counter;
+	// Range of node ids [from, to)
+	private int from;
+	private int to;
+	private int chunkSize;
 	
-	public TemporaryPageRankCalculator(String url, 
-			                               PRMatrix prMatrix,
-			                               PRSettings settings,
+	public TemporaryPageRankCalculator(PRGraph prGraph,
+			                               DanglingMass dm,
+			                               double danglingMass,
 			                               double damping_factor, 
-			                               CountDownLatch cdLatch) {
-		this.url = url;
-		this.prMatrix = prMatrix;
-		this.damping_factor = damping_factor;		
-		this.cdLatch = cdLatch;
-		this.settings = settings;
+			                               double[] previous,
+			                               double[] current,
+			                               ThreadWorkCounter counter,
+			                               int from,
+			                               int to,
+			                               int chunkSize) {
+		this.prGraph = prGraph;
+		this.dm = dm;
+		this.danglingMass = danglingMass;
+		this.damping_factor = damping_factor;
+		this.previous = previous;
+		this.current = current;
+		this.counter = counter;
+		this.from = from;
+		this.to = to;
+		this.chunkSize = chunkSize;
 	}
 	
-	public void run() {
-		PRMatrixEntry currentEntry = prMatrix.getEntry(url);
-		HashSet<String> linksIn = currentEntry.getLinksIn();
-		double tempCalc = 0.0;
-		int m = prMatrix.getNumberOfLinks();
-		
-		logger.trace("== Thread working with " + url);
-		
-		// Sequential for the time being
-		for (String incomingLink: linksIn) {
-			PRMatrixEntry incomingEntry = prMatrix.getEntry(incomingLink);
+	@Override
+	protected Double compute() {
+		if (to - from > chunkSize) {
+			int middle = (from + to) >>> 1;
+			TemporaryPageRankCalculator left = new TemporaryPageRankCalculator(prGraph, dm, danglingMass, damping_factor,
+					                                                             previous, current, counter, from, middle, chunkSize);
+			TemporaryPageRankCalculator right = new TemporaryPageRankCalculator(prGraph, dm, danglingMass, damping_factor,
+					                                                              previous, current, counter, middle, to, chunkSize);
+			left.fork();
+			double rightError = right.compute();
 			
-			tempCalc += incomingEntry.getPageRank() / incomingEntry.getLinksOut().size();			
+			return left.join() + rightError;
 		}
 		
-		// Handling dangling nodes = KEEP
-		if (settings.getdNodesPolicy() == PRMatrixPolicy.KEEP) {
-			for (String incomingLink: prMatrix.getDanglingNodes()) {
-				logger.trace("Now adding dangling node " + incomingLink);
-				// Self links
-				if ((incomingLink.equals(url) && settings.getSelfLinksPolicy() == PRMatrixPolicy.KEEP) ||
-					 !incomingLink.equals(url)) {	
-						
-					PRMatrixEntry incomingEntry = prMatrix.getEntry(incomingLink);
-					
-					tempCalc += incomingEntry.getPageRank() / incomingEntry.getLinksOut().size();
-				}
-				else 
-					logger.trace("Skipping " + incomingLink + " as it's the same as " + url);
+		int n = prGraph.getNumberOfNodes();
+		int[] offsets = prGraph.getInLinkOffsets();
+		int[] sources = prGraph.getInLinkSources();
+		int[] outDegree = prGraph.getOutDegrees();
+		double error = 0.0;
+		
+		for (int v = from; v < to; v++) {
+			double tempCalc = 0.0;
+			
+			for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+				tempCalc += previous[sources[e]] / outDegree[sources[e]];
 			}
+			
+			// Handling dangling nodes = KEEP
+			tempCalc += dm.contribution(danglingMass, previous[v], outDegree[v] == 0);
+			
+			// Here it is. The magic formula.
+			current[v] = damping_factor * tempCalc + (1 - damping_factor) / n;
+			error += Math.abs(current[v] - previous[v]);
 		}
 		
+		counter.add(offsets[to] - offsets[from]);
 		
-		// Here it is. The magic formula.
-		double currentPageRank = damping_factor * tempCalc + (1 - damping_factor) / m;
-		currentEntry.setPageRank(currentPageRank);
-		
-		logger.trace("== Finished working with " + url + " . Waiting...");
-		
-		
-		cdLatch.countDown();
+		return error;
 	}
 }
 
-
 /**
- * Calculates the error rate by performing the L1 norm between the previous values
- * in the matrix and the current ones (after a calculation).
+ * Calculates the current pagerank of the nodes in a range of chunks of an edge
+ * balanced partition, splitting it into halves until a single chunk is left.
+ * <br>
+ * The work of the iteration is seen as a sequence of N + L items: the incoming
+ * links of each node followed by one item that finalizes the node. Each chunk gets
+ * the same number of consecutive items, so a node with millions of incoming links
+ * is split among several chunks. The partial sums of those nodes are kept in the
+ * Partition and finalized by Partition.reduce() once all the chunks are done.
+ * <br>
+ * Returns the L1 norm between the previous values and the current ones of the nodes
+ * finalized by the chunks.
  * 
  * @author Manuel Medina González
  *
  */
-
-class ErrorComputer implements Callable<Double> {
+class EdgeRangePageRankCalculator extends RecursiveTask<Double> {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private PRGraph prGraph;
+	private Partition partition;
+	private DanglingMass dm;
+	private double danglingMass;
+	private double damping_factor;
+	// Values of the previous iteration (read only) and the current one
+	private double[] previous;
+	private double[] current;
+	private ThreadWorkCounter counter;
+	// Range of chunks [from, to)
+	private int from;
+	private int to;
+	
+	public EdgeRangePageRankCalculator(PRGraph prGraph,
+			                               Partition partition,
+			                               DanglingMass dm,
+			                               double danglingMass,
+			                               double damping_factor, 
+			                               double[] previous,
+			                               double[] current,
+			                               ThreadWorkCounter counter,
+			                               int from,
+			                               int to) {
+		this.prGraph = prGraph;
+		this.partition = partition;
+		this.dm = dm;
+		this.danglingMass = danglingMass;
+		this.damping_factor = damping_factor;
+		this.previous = previous;
+		this.current = current;
+		this.counter = counter;
+		this.from = from;
+		this.to = to;
+	}
+	
+	/**
+	 * Splits the N + L items of the given graph into chunks of about chunkSize items.
+	 */
+	public static Partition createPartition(PRGraph prGraph, int chunkSize) {
+		long nItems = (long)prGraph.getNumberOfNodes() + prGraph.getNumberOfEdges();
+		int nChunks = (int)Math.max(1, (nItems + chunkSize - 1) / chunkSize);
 		
-	private PRMatrix thePreviousMatrix;
-	private PRMatrix currentMatrix;
-	// To create deep copies of the matrix
-	Cloner cloner = new Cloner();
+		return new Partition(prGraph, nItems, nChunks);
+	}
 	
-	public ErrorComputer(PRMatrix currentMatrix) {
-		this.currentMatrix = currentMatrix;
+	@Override
+	protected Double compute() {
+		if (to - from > 1) {
+			int middle = (from + to) >>> 1;
+			EdgeRangePageRankCalculator left = new EdgeRangePageRankCalculator(prGraph, partition, dm, danglingMass, damping_factor,
+					                                                             previous, current, counter, from, middle);
+			EdgeRangePageRankCalculator right = new EdgeRangePageRankCalculator(prGraph, partition, dm, danglingMass, damping_factor,
+					                                                              previous, current, counter, middle, to);
+			left.fork();
+			double rightError = right.compute();
+			
+			return left.join() + rightError;
+		}
+		
+		return computeChunk(from);
 	}
 	
-	private double L1Norm() {
+	private double computeChunk(int chunk) {
+		int n = prGraph.getNumberOfNodes();
+		int[] offsets = prGraph.getInLinkOffsets();
+		int[] sources = prGraph.getInLinkSources();
+		int[] outDegree = prGraph.getOutDegrees();
+		
+		long start = partition.start[chunk];
+		long end = partition.start[chunk + 1];
+		int v = partition.firstNode[chunk];
+		// Item of the first incoming link of v. Its last link is followed by the finalizing item
+		long base = (long)offsets[v] + v;
+		// Whether the links of v were started by a previous chunk
+		boolean leading = start > base;
+		long item = start;
+		long nLinks = 0;
 		double error = 0.0;
-		// Current and previous have the same number of elementsvalue
-		for (Entry<String, PRMatrixEntry> entry : currentMatrix.getURLEntrySet()) {
-			error += Math.abs(entry.getValue().getPageRank() - thePreviousMatrix.getEntry(entry.getKey()).getPageRank());
+		double tempCalc = 0.0;
+		
+		partition.leadNode[chunk] = -1;
+		partition.tailNode[chunk] = -1;
+		
+		while (item < end) {
+			long finalItem = base + offsets[v + 1] - offsets[v];
+			int e = (int)(offsets[v] + (item - base));
+			int last = (int)(offsets[v] + (Math.min(finalItem, end) - base));
+			
+			nLinks += last - e;
+			for (; e < last; e++) {
+				tempCalc += previous[sources[e]] / outDegree[sources[e]];
+			}
+			
+			if (finalItem >= end) {
+				// The next chunk carries on with the links of v
+				if (leading) {
+					partition.setLead(chunk, v, tempCalc, false);
+				}
+				else {
+					partition.tailNode[chunk] = v;
+					partition.tailSum[chunk] = tempCalc;
+				}
+				break;
+			}
+			
+			if (leading) {
+				partition.setLead(chunk, v, tempCalc, true);
+				leading = false;
+			}
+			else {
+				// Handling dangling nodes = KEEP
+				tempCalc += dm.contribution(danglingMass, previous[v], outDegree[v] == 0);
+				
+				// Here it is. The magic formula.
+				current[v] = damping_factor * tempCalc + (1 - damping_factor) / n;
+				error += Math.abs(current[v] - previous[v]);
+			}
+			
+			tempCalc = 0.0;
+			item = finalItem + 1;
+			v++;
+			base = (long)offsets[v] + v;
 		}
 		
+		counter.add(nLinks);
+		
 		return error;
+	}
+	
+	/**
+	 * The chunks of an edge balanced partition, along with the partial sums
+	 * of the nodes that are split among several chunks.
+	 */
+	static class Partition {
+		// First item of each chunk (nChunks + 1 elements)
+		private long[] start;
+		// Node of the first item of each chunk
+		private int[] firstNode;
+		// Node started by a previous chunk, its partial sum and whether the chunk finished it
+		private int[] leadNode;
+		private double[] leadSum;
+		private boolean[] leadFinished;
+		// Node not finished by the chunk and its partial sum
+		private int[] tailNode;
+		private double[] tailSum;
+		
+		Partition(PRGraph prGraph, long nItems, int nChunks) {
+			int[] offsets = prGraph.getInLinkOffsets();
+			int n = prGraph.getNumberOfNodes();
+			
+			start = new long[nChunks + 1];
+			firstNode = new int[nChunks];
+			leadNode = new int[nChunks];
+			leadSum = new double[nChunks];
+			leadFinished = new boolean[nChunks];
+			tailNode = new int[nChunks];
+			tailSum = new double[nChunks];
+			
+			for (int c = 0; c <= nChunks; c++) {
+				start[c] = nItems * c / nChunks;
+			}
+			
+			// Binary search of the node whose items contain the start of each chunk
+			for (int c = 0; c < nChunks; c++) {
+				int low = 0;
+				int high = n - 1;
+				while (low < high) {
+					int middle = (low + high + 1) >>> 1;
+					if ((long)offsets[middle] + middle <= start[c])
+						low = middle;
+					else
+						high = middle - 1;
+				}
+				firstNode[c] = low;
+			}
+		}
 		
-	}	
+		public int size() {
+			return firstNode.length;
+		}
+		
+		private void setLead(int chunk, int node, double sum, boolean finished) {
+			leadNode[chunk] = node;
+			leadSum[chunk] = sum;
+			leadFinished[chunk] = finished;
+		}
+		
+		/**
+		 * Adds up the partial sums of the nodes split among chunks and calculates their pagerank.
+		 * 
+		 * @return The L1 norm between the previous values and the current ones of those nodes
+		 */
+		public double reduce(PRGraph prGraph, DanglingMass dm, double danglingMass, double damping_factor,
+				             double[] previous, double[] current) {
+			int n = prGraph.getNumberOfNodes();
+			int[] outDegree = prGraph.getOutDegrees();
+			double error = 0.0;
+			double tempCalc = 0.0;
+			
+			for (int c = 0; c < size(); c++) {
+				if (leadNode[c] != -1) {
+					int v = leadNode[c];
+					tempCalc += leadSum[c];
+					
+					if (leadFinished[c]) {
+						tempCalc += dm.contribution(danglingMass, previous[v], outDegree[v] == 0);
+						current[v] = damping_factor * tempCalc + (1 - damping_factor) / n;
+						error += Math.abs(current[v] - previous[v]);
+					}
+				}
+				
+				if (tailNode[c] != -1) {
+					tempCalc = tailSum[c];
+				}
+			}
+			
+			return error;
+		}
+	}
+}
+
+/**
+ * Counts the incoming links processed by each worker thread of a ForkJoinPool
+ * during an iteration.
+ * <br>
+ * Each slot is only written by the worker with that pool index, and the values
+ * are read once the iteration is over.
+ * 
+ * @author Manuel Medina González
+ *
+ */
+class ThreadWorkCounter {
 	
-	public void setPreviousMatrix(PRMatrix previousMatrix) {
-		thePreviousMatrix = cloner.deepClone(previousMatrix);
+	private long[] links;
+	
+	public ThreadWorkCounter(int nThreads) {
+		links = new long[nThreads];
 	}
 	
+	public void reset() {
+		Arrays.fill(links, 0);
+	}
 	
-	public Double call() {
-		return L1Norm();
+	public void add(long nLinks) {
+		Thread thread = Thread.currentThread();
+		int index = 0;
+		
+		if (thread instanceof ForkJoinWorkerThread) {
+			index = ((ForkJoinWorkerThread)thread).getPoolIndex() % links.length;
+		}
+		
+		links[index] += nLinks;
 	}
 	
+	/**
+	 * @return The ratio between the largest number of links processed by a thread and the mean
+	 */
+	public double getImbalance() {
+		long max = 0;
+		long total = 0;
+		for (long l : links) {
+			max = Math.max(max, l);
+			total += l;
+		}
+		
+		return total == 0 ? 1.0 : (double)max * links.length / total;
+	}
 	
+	@Override
+	public String toString() {
+		return Arrays.toString(links);
+	}
 }
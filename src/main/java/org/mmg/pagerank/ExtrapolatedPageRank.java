@@ -0,0 +1,207 @@
+package org.mmg.pagerank;
+
+import org.mmg.pagerank.matrix.PRGraph;
+
+/**
+ * Power iteration (as in DecayFactorPageRank) accelerated by periodically extrapolating
+ * the last iterates towards the fixed point, as described in "Extrapolation Methods for
+ * Accelerating PageRank Computations" (Kamvar et al.).
+ * <br>
+ * <br>
+ * The error of the iterate k is e(k) = x(k) - x*, and e(k + 1) = M e(k) where M is the
+ * iteration matrix. Assuming e(k) lies in the span of the eigenvectors of the largest
+ * eigenvalues of M:
+ * <br>
+ * <br>
+ * * aitken: one eigenvector. With d(k) = x(k + 1) - x(k), d(k + 1) = l d(k), and
+ *   x* = (x(k + 1) - l x(k)) / (1 - l)
+ * <br>
+ * * quadratic: two eigenvectors. The differences satisfy d(k + 2) + c1 d(k + 1) + c0 d(k) = 0
+ *   (c0 and c1 found by least squares), and x* = (x(k + 2) + c1 x(k + 1) + c0 x(k)) / (1 + c1 + c0)
+ * <br>
+ * <br>
+ * The extrapolation is applied every settings.getExtrapolationFrequency() iterations,
+ * as long as enough power iterations have been performed since the last one.
+ *
+ * @author Manuel Medina González
+ * @see DecayFactorPageRank
+ *
+ */
+public class ExtrapolatedPageRank extends DecayFactorPageRank {
+	
+	public static final String AITKEN = "aitken";
+	public static final String QUADRATIC = "quadratic";
+	
+	// Number of iterates kept
+	private static final int HISTORY = 4;
+	
+	public ExtrapolatedPageRank(int maxIterations, double damping_factor, double epsilon) {
+		super(maxIterations, damping_factor, epsilon);
+	}
+	
+	public void calculatePageRank(PRGraph prGraph, PRSettings settings) {
+		BaselineComparison baseline = null;
+		
+		if (settings.isCompareBaseline()) {
+			baseline = BaselineComparison.run(prGraph, settings, prGraph.getPageRanks(), maxIterations, damping_factor, epsilon);
+		}
+		
+		long start = System.currentTimeMillis();
+		int n = prGraph.getNumberOfNodes();
+		boolean quadratic = !AITKEN.equals(settings.getExtrapolationMethod());
+		int frequency = settings.getExtrapolationFrequency();
+		// Iterates needed by the extrapolation
+		int needed = quadratic ? 4 : 3;
+		
+		// Ring of the last iterates. Each power step writes over the oldest one
+		double[][] history = new double[HISTORY][];
+		history[0] = prGraph.getPageRanks();
+		for (int i = 1; i < HISTORY; i++) {
+			history[i] = new double[n];
+		}
+		int newest = 0;
+		// Consecutive power iterates in the ring
+		int available = 1;
+		int cntExtrapolations = 0;
+		
+		prepare(prGraph, settings);
+		
+		if (verbose) {
+			logger.info("Extrapolation: " + (quadratic ? QUADRATIC : AITKEN) + " every " + frequency + " iterations");
+		}
+		
+		int cntIterations = 0;
+		double currentError = 1.0;
+		
+		// Main loop
+		while (cntIterations < maxIterations && currentError > epsilon) {
+			int next = (newest + 1) % HISTORY;
+			currentError = powerStep(history[newest], history[next]);
+			newest = next;
+			available = Math.min(available + 1, HISTORY);
+			cntIterations += 1;
+			
+			logIteration(cntIterations, currentError, history[newest]);
+			
+			if (currentError > epsilon && frequency > 0 && cntIterations % frequency == 0 && available >= needed) {
+				boolean applied = quadratic ? quadraticExtrapolation(history, newest) : aitkenExtrapolation(history, newest);
+				
+				if (applied) {
+					// Older iterates are no longer consecutive to the newest one
+					available = 1;
+					cntExtrapolations += 1;
+					if (verbose) {
+						logger.info("Extrapolation applied after iteration " + cntIterations);
+					}
+				}
+			}
+		}
+		
+		pool.shutdown();
+		
+		if (history[newest] != prGraph.getPageRanks()) {
+			System.arraycopy(history[newest], 0, prGraph.getPageRanks(), 0, n);
+		}
+		
+		long elapsed = System.currentTimeMillis() - start;
+		
+		logFinished(prGraph, cntIterations);
+		logger.info("Extrapolations applied: " + cntExtrapolations + ". Total time: " + elapsed + " ms");
+		
+		if (baseline != null) {
+			baseline.log("Extrapolated power method", cntIterations, elapsed, prGraph.getPageRanks());
+		}
+	}
+	
+	/*
+	 * Position of the iterate that is the given number of steps older than the newest one
+	 */
+	private static int older(int newest, int steps) {
+		return (newest - steps + HISTORY) % HISTORY;
+	}
+	
+	/*
+	 * Overwrites the newest iterate with the aitken extrapolation of the last 3.
+	 * Returns false if it could not be applied.
+	 */
+	private boolean aitkenExtrapolation(double[][] history, int newest) {
+		double[] x0 = history[older(newest, 2)];
+		double[] x1 = history[older(newest, 1)];
+		double[] x2 = history[newest];
+		double d1d0 = 0.0;
+		double d0d0 = 0.0;
+		
+		for (int v = 0; v < x2.length; v++) {
+			double d0 = x1[v] - x0[v];
+			double d1 = x2[v] - x1[v];
+			
+			d1d0 += d1 * d0;
+			d0d0 += d0 * d0;
+		}
+		
+		if (d0d0 == 0.0) {
+			return false;
+		}
+		
+		double l = d1d0 / d0d0;
+		
+		if (Double.isNaN(l) || Math.abs(l) >= 1.0) {
+			return false;
+		}
+		
+		for (int v = 0; v < x2.length; v++) {
+			x2[v] = (x2[v] - l * x1[v]) / (1 - l);
+		}
+		
+		return true;
+	}
+	
+	/*
+	 * Overwrites the newest iterate with the quadratic extrapolation of the last 4.
+	 * Returns false if it could not be applied.
+	 */
+	private boolean quadraticExtrapolation(double[][] history, int newest) {
+		double[] x0 = history[older(newest, 3)];
+		double[] x1 = history[older(newest, 2)];
+		double[] x2 = history[older(newest, 1)];
+		double[] x3 = history[newest];
+		// Normal equations of the least squares problem [d0 d1] (c0, c1) = -d2
+		double a00 = 0.0;
+		double a01 = 0.0;
+		double a11 = 0.0;
+		double b0 = 0.0;
+		double b1 = 0.0;
+		
+		for (int v = 0; v < x3.length; v++) {
+			double d0 = x1[v] - x0[v];
+			double d1 = x2[v] - x1[v];
+			double d2 = x3[v] - x2[v];
+			
+			a00 += d0 * d0;
+			a01 += d0 * d1;
+			a11 += d1 * d1;
+			b0 -= d0 * d2;
+			b1 -= d1 * d2;
+		}
+		
+		double det = a00 * a11 - a01 * a01;
+		
+		if (Math.abs(det) <= 1e-12 * a00 * a11) {
+			return false;
+		}
+		
+		double c0 = (b0 * a11 - b1 * a01) / det;
+		double c1 = (a00 * b1 - a01 * b0) / det;
+		double denominator = 1 + c1 + c0;
+		
+		if (Double.isNaN(denominator) || Math.abs(denominator) < 1e-12) {
+			return false;
+		}
+		
+		for (int v = 0; v < x3.length; v++) {
+			x3[v] = (x3[v] + c1 * x2[v] + c0 * x1[v]) / denominator;
+		}
+		
+		return true;
+	}
+}
@@ -0,0 +1,222 @@
+package org.mmg.pagerank;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.mmg.pagerank.matrix.PRGraph;
+
+/**
+ * Implements the same calculation as DecayFactorPageRank, but updates the pagerank
+ * values in place and in node order (Gauss-Seidel), so each update uses the newest
+ * values of the nodes already calculated in the iteration. It usually converges in
+ * about half the iterations for the same error rate.
+ * <br>
+ * <br>
+ * The parallel variant splits the nodes into chunks of settings.getChunkSize() nodes:
+ * the values are updated in place within each chunk, and the values of other chunks
+ * are taken from the previous iteration (Jacobi between chunks).
+ *
+ * @author Manuel Medina González
+ * @see DecayFactorPageRank
+ *
+ */
+public class GaussSeidelPageRank extends GraphPageRankCalculator {
+	
+	private boolean parallel;
+	
+	public GaussSeidelPageRank(int maxIterations, double damping_factor, double epsilon, boolean parallel) {
+		super(maxIterations, damping_factor, epsilon);
+		
+		this.parallel = parallel;
+	}
+	
+	public void calculatePageRank(PRGraph prGraph, PRSettings settings) {
+		if (parallel) {
+			calculateInChunks(prGraph, settings);
+		}
+		else {
+			calculateInPlace(prGraph, settings);
+		}
+	}
+	
+	/*
+	 * Sequential: a single rank vector updated in place
+	 */
+	private void calculateInPlace(PRGraph prGraph, PRSettings settings) {
+		int n = prGraph.getNumberOfNodes();
+		int[] offsets = prGraph.getInLinkOffsets();
+		int[] sources = prGraph.getInLinkSources();
+		int[] outDegree = prGraph.getOutDegrees();
+		double[] pageRanks = prGraph.getPageRanks();
+		
+		DanglingMass dm = new DanglingMass(n, settings);
+		
+		int cntIterations = 0;
+		double currentError = 1.0;
+		
+		// Main loop
+		while (cntIterations < maxIterations && currentError > epsilon) {
+			// Kept up to date as dangling nodes change
+			double danglingMass = dm.total(pageRanks, prGraph.getDanglingNodes());
+			currentError = 0.0;
+			
+			for (int v = 0; v < n; v++) {
+				double tempCalc = 0.0;
+				
+				for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+					tempCalc += pageRanks[sources[e]] / outDegree[sources[e]];
+				}
+				
+				// Handling dangling nodes = KEEP
+				tempCalc += dm.contribution(danglingMass, pageRanks[v], outDegree[v] == 0);
+				
+				double currentPageRank = damping_factor * tempCalc + (1 - damping_factor) / n;
+				
+				if (outDegree[v] == 0) {
+					danglingMass += currentPageRank - pageRanks[v];
+				}
+				
+				currentError += Math.abs(currentPageRank - pageRanks[v]);
+				pageRanks[v] = currentPageRank;
+			}
+			
+			logIteration(cntIterations + 1, currentError, pageRanks);
+			cntIterations += 1;
+		}
+		
+		logFinished(prGraph, cntIterations);
+	}
+	
+	/*
+	 * Parallel: Gauss-Seidel within chunks, Jacobi between them
+	 */
+	private void calculateInChunks(PRGraph prGraph, PRSettings settings) {
+		int n = prGraph.getNumberOfNodes();
+		int chunkSize = Math.max(1, settings.getChunkSize());
+		// Double buffered rank vectors, swapped between iterations
+		double[] previous = prGraph.getPageRanks();
+		double[] current = new double[n];
+		
+		DanglingMass dm = new DanglingMass(n, settings);
+		ForkJoinPool pool = new ForkJoinPool(NTHREADS);
+		
+		logger.info("Number of threads: " + NTHREADS);
+		logger.info("Chunk size: " + chunkSize + " nodes (" + ((n + chunkSize - 1) / chunkSize) + " chunks)");
+		
+		int cntIterations = 0;
+		double currentError = 1.0;
+		
+		// Main loop
+		while (cntIterations < maxIterations && currentError > epsilon) {
+			double danglingMass = dm.total(previous, prGraph.getDanglingNodes());
+			
+			currentError = pool.invoke(new GaussSeidelChunkCalculator(prGraph, dm, danglingMass, damping_factor,
+					                                                      previous, current, 0, n, chunkSize));
+			
+			double[] tmp = previous;
+			previous = current;
+			current = tmp;
+			
+			logIteration(cntIterations + 1, currentError, previous);
+			cntIterations += 1;
+		}
+		
+		pool.shutdown();
+		
+		// The latest values are in previous after the last swap
+		if (previous != prGraph.getPageRanks()) {
+			System.arraycopy(previous, 0, prGraph.getPageRanks(), 0, n);
+		}
+		
+		logFinished(prGraph, cntIterations);
+	}
+}
+
+/**
+ * Calculates the current pagerank of a contiguous range of nodes, splitting it
+ * into halves until it is no larger than the chunk size.
+ * <br>
+ * Within a chunk, the values of the nodes already calculated are taken from the current
+ * vector (Gauss-Seidel); all others, from the previous one.
+ * <br>
+ * Returns the L1 norm between the previous values of the range and the current ones.
+ *
+ * @author Manuel Medina González
+ *
+ */
+class GaussSeidelChunkCalculator extends RecursiveTask<Double> {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private PRGraph prGraph;
+	private DanglingMass dm;
+	private double danglingMass;
+	private double damping_factor;
+	private double[] previous;
+	private double[] current;
+	// Range of node ids [from, to)
+	private int from;
+	private int to;
+	private int chunkSize;
+	
+	public GaussSeidelChunkCalculator(PRGraph prGraph,
+			                              DanglingMass dm,
+			                              double danglingMass,
+			                              double damping_factor,
+			                              double[] previous,
+			                              double[] current,
+			                              int from,
+			                              int to,
+			                              int chunkSize) {
+		this.prGraph = prGraph;
+		this.dm = dm;
+		this.danglingMass = danglingMass;
+		this.damping_factor = damping_factor;
+		this.previous = previous;
+		this.current = current;
+		this.from = from;
+		this.to = to;
+		this.chunkSize = chunkSize;
+	}
+	
+	@Override
+	protected Double compute() {
+		if (to - from > chunkSize) {
+			int middle = (from + to) >>> 1;
+			GaussSeidelChunkCalculator left = new GaussSeidelChunkCalculator(prGraph, dm, danglingMass, damping_factor,
+					                                                           previous, current, from, middle, chunkSize);
+			GaussSeidelChunkCalculator right = new GaussSeidelChunkCalculator(prGraph, dm, danglingMass, damping_factor,
+					                                                            previous, current, middle, to, chunkSize);
+			left.fork();
+			double rightError = right.compute();
+			
+			return left.join() + rightError;
+		}
+		
+		int n = prGraph.getNumberOfNodes();
+		int[] offsets = prGraph.getInLinkOffsets();
+		int[] sources = prGraph.getInLinkSources();
+		int[] outDegree = prGraph.getOutDegrees();
+		double error = 0.0;
+		
+		for (int v = from; v < to; v++) {
+			double tempCalc = 0.0;
+			
+			for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+				int u = sources[e];
+				// Nodes of this chunk before v have already been updated
+				double pageRank = (u >= from && u < v) ? current[u] : previous[u];
+				
+				tempCalc += pageRank / outDegree[u];
+			}
+			
+			// Handling dangling nodes = KEEP
+			tempCalc += dm.contribution(danglingMass, previous[v], outDegree[v] == 0);
+			
+			current[v] = damping_factor * tempCalc + (1 - damping_factor) / n;
+			error += Math.abs(current[v] - previous[v]);
+		}
+		
+		return error;
+	}
+}
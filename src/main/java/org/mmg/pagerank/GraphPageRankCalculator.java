@@ -0,0 +1,87 @@
+package org.mmg.pagerank;
+
+import java.util.Arrays;
+
+import org.mmg.pagerank.matrix.PRGraph;
+import org.mmg.pagerank.matrix.PRMatrix;
+import org.mmg.pagerank.matrix.PRMatrixEntry;
+import org.mmg.pagerank.matrix.PRMatrixFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Base class of the calculators that work over the arrays of a PRGraph.
+ * <br>
+ * <br>
+ * The PRMatrix is only a view for small graphs: the calculation is performed
+ * over a PRGraph built from it, and the results are copied back to the entries.
+ * 
+ * @author Manuel Medina González
+ *
+ */
+public abstract class GraphPageRankCalculator implements PageRankCalculator {
+	
+	protected static final int NTHREADS = Runtime.getRuntime().availableProcessors();
+	protected int maxIterations;
+	protected double damping_factor;
+	// Error rate
+	protected double epsilon;
+	// Whether iterations and results are shown
+	protected boolean verbose = true;
+	// Number of iterations performed by the last calculation
+	protected int iterations;
+	protected Logger logger = LoggerFactory.getLogger(getClass());
+	
+	public GraphPageRankCalculator(int maxIterations, double damping_factor, double epsilon) {
+		this.maxIterations = maxIterations;
+		this.damping_factor = damping_factor;
+		this.epsilon = epsilon;
+	}
+	
+	public void calculatePageRank(PRMatrix prMatrix, PRSettings settings) {
+		PRGraph prGraph = PRMatrixFactory.buildPRGraph(prMatrix);
+		
+		calculatePageRank(prGraph, settings);
+		
+		for (PRMatrixEntry entry : prMatrix.getAllEntries()) {
+			entry.setPageRank(prGraph.getPageRanks()[entry.getId()]);
+		}
+	}
+	
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+	
+	public int getIterations() {
+		return iterations;
+	}
+	
+	/*
+	 * Shows the result of an iteration. The pagerank values are only shown in debug mode.
+	 */
+	protected void logIteration(int iteration, double currentError, double[] pageRanks) {
+		if (!verbose) {
+			return;
+		}
+		
+		logger.info(" ========= Iteration " + iteration + " ========= ");
+		if (logger.isDebugEnabled()) {
+			logger.debug(" ==> Current pageranks: " + Arrays.toString(pageRanks));
+		}
+		logger.info("Current error rate: " + currentError + System.getProperty("line.separator"));
+	}
+	
+	/*
+	 * Shows the final pagerank values
+	 */
+	protected void logFinished(PRGraph prGraph, int cntIterations) {
+		iterations = cntIterations;
+		
+		if (!verbose) {
+			return;
+		}
+		
+		prGraph.printPageRanks();
+		logger.info(" ===== Execution finished. Total number of iterations performed: " + cntIterations + " ====");
+	}
+}
@@ -0,0 +1,179 @@
+package org.mmg.pagerank;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.mmg.pagerank.matrix.PRGraph;
+import org.mmg.pagerank.matrix.PRGraphDelta;
+import org.mmg.pagerank.matrix.PRMatrixPolicy;
+
+/**
+ * Brings the pagerank values of a graph up to date after some links have been
+ * added or removed (see PRMatrixFactory.applyDelta), starting from the previous values
+ * and only calculating the nodes whose values can have changed.
+ * <br>
+ * <br>
+ * The affected nodes are calculated first, in place (Gauss-Seidel). The URLs linked by
+ * a node whose value changed more than the error rate / N are calculated in the next
+ * iteration, so the changes spread only as far as they matter.
+ * <br>
+ * <br>
+ * The teleport term and the pagerank of the dangling nodes (dangling.nodes.policy = keep)
+ * go to every node: when new URLs are added, when a node becomes dangling (or stops being
+ * so), or when the pagerank of the dangling nodes drifts more than the error rate,
+ * all the nodes are calculated once.
+ *
+ * @author Manuel Medina González
+ * @see PRGraphDelta
+ *
+ */
+public class IncrementalPageRank extends GraphPageRankCalculator {
+	
+	// Number of distinct nodes calculated by the last update
+	private int touched;
+	// Number of node calculations performed by the last update
+	private long nUpdates;
+	
+	public IncrementalPageRank(int maxIterations, double damping_factor, double epsilon) {
+		super(maxIterations, damping_factor, epsilon);
+	}
+	
+	/*
+	 * A whole calculation: every node is affected
+	 */
+	public void calculatePageRank(PRGraph prGraph, PRSettings settings) {
+		int[] allNodes = new int[prGraph.getNumberOfNodes()];
+		for (int v = 0; v < allNodes.length; v++) {
+			allNodes[v] = v;
+		}
+		
+		update(prGraph, allNodes, true, settings);
+	}
+	
+	/**
+	 * Updates the pagerank values of the graph of the given delta, which must hold the
+	 * values of the previous graph.
+	 */
+	public void calculatePageRank(PRGraphDelta delta, PRSettings settings) {
+		boolean global = delta.getNumberOfNewNodes() > 0 ||
+				         (delta.hasDanglingChanges() && settings.getdNodesPolicy() == PRMatrixPolicy.KEEP);
+		
+		update(delta.getGraph(), delta.getAffectedNodes(), global, settings);
+	}
+	
+	public int getTouchedNodes() {
+		return touched;
+	}
+	
+	public long getNumberOfUpdates() {
+		return nUpdates;
+	}
+	
+	private void update(PRGraph prGraph, int[] affected, boolean global, PRSettings settings) {
+		long start = System.currentTimeMillis();
+		int n = prGraph.getNumberOfNodes();
+		int[] offsets = prGraph.getInLinkOffsets();
+		int[] sources = prGraph.getInLinkSources();
+		int[] outDegree = prGraph.getOutDegrees();
+		int[] outOffsets = prGraph.getOutLinkOffsets();
+		int[] targets = prGraph.getOutLinkTargets();
+		double[] pageRanks = prGraph.getPageRanks();
+		// Change of a node under which the URLs it links to are not calculated again
+		double tolerance = epsilon / n;
+		
+		DanglingMass dm = new DanglingMass(n, settings);
+		// Pagerank of the dangling nodes in the last calculation of all the nodes
+		double globalMass = dm.total(pageRanks, prGraph.getDanglingNodes());
+		
+		int[] active = affected.clone();
+		int nActive = active.length;
+		int[] next = new int[Math.max(16, nActive)];
+		int nNext = 0;
+		// Nodes in the active or next list that have not been calculated yet
+		BitSet queued = new BitSet(n);
+		BitSet touchedNodes = new BitSet(n);
+		
+		for (int i = 0; i < nActive; i++) {
+			queued.set(active[i]);
+		}
+		
+		nUpdates = 0;
+		int cntIterations = 0;
+		double currentError = 1.0;
+		
+		// Main loop
+		while (cntIterations < maxIterations && nActive > 0) {
+			double danglingMass = dm.total(pageRanks, prGraph.getDanglingNodes());
+			
+			if (global || Math.abs(danglingMass - globalMass) * damping_factor * dm.share() * n > epsilon) {
+				// Every node gets the change
+				active = new int[n];
+				for (int v = 0; v < n; v++) {
+					active[v] = v;
+				}
+				nActive = n;
+				queued.set(0, n);
+				globalMass = danglingMass;
+				global = false;
+			}
+			
+			currentError = 0.0;
+			
+			for (int i = 0; i < nActive; i++) {
+				int v = active[i];
+				double tempCalc = 0.0;
+				
+				queued.clear(v);
+				
+				for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+					tempCalc += pageRanks[sources[e]] / outDegree[sources[e]];
+				}
+				
+				// Handling dangling nodes = KEEP
+				tempCalc += dm.contribution(danglingMass, pageRanks[v], outDegree[v] == 0);
+				
+				double currentPageRank = damping_factor * tempCalc + (1 - damping_factor) / n;
+				double change = Math.abs(currentPageRank - pageRanks[v]);
+				
+				currentError += change;
+				pageRanks[v] = currentPageRank;
+				touchedNodes.set(v);
+				
+				if (change > tolerance) {
+					for (int e = outOffsets[v]; e < outOffsets[v + 1]; e++) {
+						int w = targets[e];
+						
+						if (!queued.get(w)) {
+							queued.set(w);
+							if (nNext == next.length) {
+								next = Arrays.copyOf(next, nNext * 2);
+							}
+							next[nNext++] = w;
+						}
+					}
+				}
+			}
+			
+			nUpdates += nActive;
+			
+			int[] tmp = active;
+			active = next;
+			next = tmp;
+			nActive = nNext;
+			nNext = 0;
+			
+			logIteration(cntIterations + 1, currentError, pageRanks);
+			if (verbose) {
+				logger.info("Nodes calculated: " + nUpdates + " in total, " + nActive + " to calculate next");
+			}
+			cntIterations += 1;
+		}
+		
+		touched = touchedNodes.cardinality();
+		long elapsed = System.currentTimeMillis() - start;
+		
+		logFinished(prGraph, cntIterations);
+		logger.info("Touched nodes: " + touched + " of " + n + ". Node updates: " + nUpdates + " (" + ((long)n * cntIterations)
+				    + " for the same iterations over all the nodes). Total time: " + elapsed + " ms");
+	}
+}
@@ -2,12 +2,20 @@ package org.mmg.pagerank;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Properties;
 
+import org.mmg.pagerank.matrix.ExternalGraphBuilder;
+import org.mmg.pagerank.matrix.ExternalPRGraph;
+import org.mmg.pagerank.matrix.GraphGenerator;
 import org.mmg.pagerank.matrix.MalformedEntryException;
+import org.mmg.pagerank.matrix.PRGraph;
+import org.mmg.pagerank.matrix.PRGraphDelta;
+import org.mmg.pagerank.matrix.PRGraphFile;
 import org.mmg.pagerank.matrix.PRMatrix;
 import org.mmg.pagerank.matrix.PRMatrixFactory;
 import org.mmg.pagerank.matrix.PRMatrixPolicy;
+import org.mmg.pagerank.matrix.PRNodeOrder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,9 +31,56 @@ public class MMPageRank {
 	private static final String DANGLING_NODES_POLICY = "dangling.nodes.policy";
 	private static final String SELF_LINKS_POLICY = "self.links.policy";
 	private static final String EPSILON = "error.rate";
+	private static final String CHUNK_SIZE = "chunk.size";
+	private static final String PARTITION_POLICY = "partition.policy";
+	private static final String CALCULATOR = "pagerank.calculator";
+	private static final String COMPARE_BASELINE = "compare.baseline";
+	private static final String EXTRAPOLATION_METHOD = "extrapolation.method";
+	private static final String EXTRAPOLATION_FREQUENCY = "extrapolation.frequency";
+	private static final String ADAPTIVE_THRESHOLD = "adaptive.threshold";
+	private static final String ADAPTIVE_STABLE_ITERATIONS = "adaptive.stable.iterations";
+	private static final String OUTPUT_FILE = "pagerank.output.file";
+	private static final String SEEDS_FILE = "personalization.seeds.file";
+	private static final String MONTE_CARLO_WALKS = "montecarlo.walks";
+	private static final String PUSH_SOURCE_URL = "push.source.url";
+	private static final String EXTERNAL_BLOCK_SIZE = "external.block.size";
+	private static final String EXTERNAL_PREFETCH = "external.prefetch";
+	private static final String CONVERT_RUN_SIZE = "convert.run.size";
+	private static final String NODE_ORDER = "node.order";
+	private static final String GENERATOR_FORMAT = "generator.format";
+	private static final String GENERATOR_SEED = "generator.seed";
+	private static final String GENERATOR_DANGLING_FRACTION = "generator.dangling.fraction";
+	private static final String GENERATOR_SELF_LINK_RATE = "generator.self.link.rate";
+	private static final String GENERATOR_SINK_COMPONENTS = "generator.sink.components";
+	private static final String GENERATOR_SINK_SIZE = "generator.sink.size";
 	private static final String CHECK_MODE = "check";
 	private static final String RUN_MODE = "run";
+	private static final String UPDATE_MODE = "update";
+	private static final String CONVERT_MODE = "convert";
+	private static final String GENERATE_MODE = "generate";
 	private static final double DEFAULT_EPSILON = 0.0001;
+	private static final int DEFAULT_CHUNK_SIZE = 4096;
+	private static final String DECAY_CALCULATOR = "decay";
+	private static final String GAUSS_SEIDEL_CALCULATOR = "gauss-seidel";
+	private static final String PARALLEL_GAUSS_SEIDEL_CALCULATOR = "parallel-gauss-seidel";
+	private static final String EXTRAPOLATION_CALCULATOR = "extrapolation";
+	private static final int DEFAULT_EXTRAPOLATION_FREQUENCY = 10;
+	private static final String ADAPTIVE_CALCULATOR = "adaptive";
+	private static final String COMPONENTS_CALCULATOR = "components";
+	private static final String PERSONALIZED_CALCULATOR = "personalized";
+	private static final String MONTE_CARLO_CALCULATOR = "montecarlo";
+	private static final String PUSH_CALCULATOR = "push";
+	private static final String COMPRESSED_CALCULATOR = "compressed";
+	private static final String SEMI_EXTERNAL_CALCULATOR = "semi-external";
+	private static final double DEFAULT_ADAPTIVE_THRESHOLD = 0.00001;
+	private static final int DEFAULT_ADAPTIVE_STABLE_ITERATIONS = 3;
+	private static final int DEFAULT_MONTE_CARLO_WALKS = 10;
+	private static final int DEFAULT_EXTERNAL_BLOCK_SIZE = 4194304;
+	private static final int DEFAULT_CONVERT_RUN_SIZE = 16777216;
+	private static final String LINKS_FORMAT = "links";
+	private static final String GRAPH_FORMAT = "graph";
+	private static final long DEFAULT_GENERATOR_SEED = 1;
+	private static final int DEFAULT_GENERATOR_SINK_SIZE = 10;
 	
 	private static Logger logger = LoggerFactory.getLogger(MMPageRank.class);
 	
@@ -103,12 +158,406 @@ public class MMPageRank {
 			settings.setEpsilon(Double.parseDouble((String)prop.get(EPSILON)));
 		}
 		
+		if (!prop.containsKey(CHUNK_SIZE)) {
+			settings.setChunkSize(DEFAULT_CHUNK_SIZE);
+		}
+		else {
+			settings.setChunkSize(Integer.parseInt((String)prop.get(CHUNK_SIZE)));
+		}
+		
+		if (!prop.containsKey(PARTITION_POLICY)) {
+			settings.setPartitionPolicy(PRPartitionPolicy.EDGES);
+		}
+		else {
+			String pp = (String)prop.get(PARTITION_POLICY);
+			switch (pp) {
+			case "nodes":
+				settings.setPartitionPolicy(PRPartitionPolicy.NODES);
+				break;
+				
+			default:
+				settings.setPartitionPolicy(PRPartitionPolicy.EDGES);
+			}
+		}
+		
+		if (!prop.containsKey(CALCULATOR)) {
+			settings.setCalculator(DECAY_CALCULATOR);
+		}
+		else {
+			settings.setCalculator((String)prop.get(CALCULATOR));
+		}
+		
+		if (!prop.containsKey(COMPARE_BASELINE)) {
+			settings.setCompareBaseline(false);
+		}
+		else {
+			settings.setCompareBaseline(Boolean.parseBoolean((String)prop.get(COMPARE_BASELINE)));
+		}
+		
+		if (!prop.containsKey(EXTRAPOLATION_METHOD)) {
+			settings.setExtrapolationMethod(ExtrapolatedPageRank.QUADRATIC);
+		}
+		else {
+			settings.setExtrapolationMethod((String)prop.get(EXTRAPOLATION_METHOD));
+		}
+		
+		if (!prop.containsKey(EXTRAPOLATION_FREQUENCY)) {
+			settings.setExtrapolationFrequency(DEFAULT_EXTRAPOLATION_FREQUENCY);
+		}
+		else {
+			settings.setExtrapolationFrequency(Integer.parseInt((String)prop.get(EXTRAPOLATION_FREQUENCY)));
+		}
+		
+		if (!prop.containsKey(ADAPTIVE_THRESHOLD)) {
+			settings.setAdaptiveThreshold(DEFAULT_ADAPTIVE_THRESHOLD);
+		}
+		else {
+			settings.setAdaptiveThreshold(Double.parseDouble((String)prop.get(ADAPTIVE_THRESHOLD)));
+		}
+		
+		if (!prop.containsKey(ADAPTIVE_STABLE_ITERATIONS)) {
+			settings.setAdaptiveStableIterations(DEFAULT_ADAPTIVE_STABLE_ITERATIONS);
+		}
+		else {
+			settings.setAdaptiveStableIterations(Integer.parseInt((String)prop.get(ADAPTIVE_STABLE_ITERATIONS)));
+		}
+		
+		if (!prop.containsKey(MONTE_CARLO_WALKS)) {
+			settings.setMonteCarloWalks(DEFAULT_MONTE_CARLO_WALKS);
+		}
+		else {
+			settings.setMonteCarloWalks(Integer.parseInt((String)prop.get(MONTE_CARLO_WALKS)));
+		}
+		
+		if (!prop.containsKey(EXTERNAL_BLOCK_SIZE)) {
+			settings.setExternalBlockSize(DEFAULT_EXTERNAL_BLOCK_SIZE);
+		}
+		else {
+			settings.setExternalBlockSize(Integer.parseInt((String)prop.get(EXTERNAL_BLOCK_SIZE)));
+		}
+		
+		if (!prop.containsKey(EXTERNAL_PREFETCH)) {
+			settings.setExternalPrefetch(true);
+		}
+		else {
+			settings.setExternalPrefetch(Boolean.parseBoolean((String)prop.get(EXTERNAL_PREFETCH)));
+		}
+		
+		if (!prop.containsKey(CONVERT_RUN_SIZE)) {
+			settings.setConvertRunSize(DEFAULT_CONVERT_RUN_SIZE);
+		}
+		else {
+			settings.setConvertRunSize(Integer.parseInt((String)prop.get(CONVERT_RUN_SIZE)));
+		}
+		
+		if (!prop.containsKey(NODE_ORDER)) {
+			settings.setNodeOrder(PRNodeOrder.NONE);
+		}
+		else {
+			String no = (String)prop.get(NODE_ORDER);
+			switch (no) {
+			case "url":
+				settings.setNodeOrder(PRNodeOrder.URL);
+				break;
+				
+			case "bfs":
+				settings.setNodeOrder(PRNodeOrder.BFS);
+				break;
+				
+			case "degree":
+				settings.setNodeOrder(PRNodeOrder.DEGREE);
+				break;
+				
+			default:
+				settings.setNodeOrder(PRNodeOrder.NONE);
+			}
+		}
+		
+		if (!prop.containsKey(GENERATOR_FORMAT)) {
+			settings.setGeneratorFormat(LINKS_FORMAT);
+		}
+		else {
+			settings.setGeneratorFormat((String)prop.get(GENERATOR_FORMAT));
+		}
+		
+		if (!prop.containsKey(GENERATOR_SEED)) {
+			settings.setGeneratorSeed(DEFAULT_GENERATOR_SEED);
+		}
+		else {
+			settings.setGeneratorSeed(Long.parseLong((String)prop.get(GENERATOR_SEED)));
+		}
+		
+		if (!prop.containsKey(GENERATOR_DANGLING_FRACTION)) {
+			settings.setGeneratorDanglingFraction(0);
+		}
+		else {
+			settings.setGeneratorDanglingFraction(Double.parseDouble((String)prop.get(GENERATOR_DANGLING_FRACTION)));
+		}
+		
+		if (!prop.containsKey(GENERATOR_SELF_LINK_RATE)) {
+			settings.setGeneratorSelfLinkRate(0);
+		}
+		else {
+			settings.setGeneratorSelfLinkRate(Double.parseDouble((String)prop.get(GENERATOR_SELF_LINK_RATE)));
+		}
+		
+		if (!prop.containsKey(GENERATOR_SINK_COMPONENTS)) {
+			settings.setGeneratorSinkComponents(0);
+		}
+		else {
+			settings.setGeneratorSinkComponents(Integer.parseInt((String)prop.get(GENERATOR_SINK_COMPONENTS)));
+		}
+		
+		if (!prop.containsKey(GENERATOR_SINK_SIZE)) {
+			settings.setGeneratorSinkSize(DEFAULT_GENERATOR_SINK_SIZE);
+		}
+		else {
+			settings.setGeneratorSinkSize(Integer.parseInt((String)prop.get(GENERATOR_SINK_SIZE)));
+		}
+		
+		// No file unless specified
+		if (prop.containsKey(OUTPUT_FILE)) {
+			settings.setOutputFile((String)prop.get(OUTPUT_FILE));
+		}
+		
+		if (prop.containsKey(SEEDS_FILE)) {
+			settings.setSeedsFile((String)prop.get(SEEDS_FILE));
+		}
+		
+		// Global pagerank unless specified
+		if (prop.containsKey(PUSH_SOURCE_URL)) {
+			settings.setPushSourceURL((String)prop.get(PUSH_SOURCE_URL));
+		}
+		
 		return settings;
 	}
 	
+	/*
+	 * Creates the calculator named in the settings, with the personalization seeds of the graph if any
+	 */
+	private static GraphPageRankCalculator createCalculator(PRGraph prGraph, PRSettings settings, int nIterations, double decay_factor)
+			throws IOException {
+		switch (settings.getCalculator()) {
+		case DECAY_CALCULATOR:
+			return new DecayFactorPageRank(nIterations, decay_factor, settings.getEpsilon());
+			
+		case GAUSS_SEIDEL_CALCULATOR:
+			return new GaussSeidelPageRank(nIterations, decay_factor, settings.getEpsilon(), false);
+			
+		case PARALLEL_GAUSS_SEIDEL_CALCULATOR:
+			return new GaussSeidelPageRank(nIterations, decay_factor, settings.getEpsilon(), true);
+			
+		case EXTRAPOLATION_CALCULATOR:
+			return new ExtrapolatedPageRank(nIterations, decay_factor, settings.getEpsilon());
+			
+		case ADAPTIVE_CALCULATOR:
+			return new AdaptivePageRank(nIterations, decay_factor, settings.getEpsilon());
+			
+		case COMPONENTS_CALCULATOR:
+			return new ComponentPageRank(nIterations, decay_factor, settings.getEpsilon());
+			
+		case PERSONALIZED_CALCULATOR:
+			PersonalizedPageRank personalized = new PersonalizedPageRank(nIterations, decay_factor, settings.getEpsilon());
+			if (settings.getSeedsFile() != null) {
+				personalized.setSeeds(PRMatrixFactory.loadSeeds(prGraph, settings.getSeedsFile()));
+			}
+			return personalized;
+			
+		case MONTE_CARLO_CALCULATOR:
+			return new MonteCarloPageRank(nIterations, decay_factor, settings.getEpsilon());
+			
+		case PUSH_CALCULATOR:
+			return new PushPageRank(nIterations, decay_factor, settings.getEpsilon());
+			
+		case COMPRESSED_CALCULATOR:
+			return new CompressedPageRank(nIterations, decay_factor, settings.getEpsilon());
+			
+		default:
+			errorExit("Unknown calculator: " + settings.getCalculator());
+			return null;
+		}
+	}
+	
 	
 	private static String usage() {
-		return "Usage: MMPageRank check <filename> | run <filename> <number of iterations> <decay factor>";
+		return "Usage: MMPageRank check <filename> | run <filename> <number of iterations> <decay factor> [<previous pageranks filename>]" +
+			   " | update <filename> <number of iterations> <decay factor> <changes filename>..." +
+			   " | convert <filename> <graph filename>" +
+			   " | generate <model> <number of URLs> <number of links> <filename>";
+	}
+	
+	/*
+	 * Applies each file of changes in turn to the graph, and updates the pagerank values
+	 * from the previous ones. Returns the last graph
+	 */
+	private static PRGraph applyChanges(PRGraph prGraph, String[] filenames, PRSettings settings, int nIterations, double decay_factor)
+			throws MalformedEntryException, IOException {
+		for (String filename : filenames) {
+			PRGraphDelta delta = PRMatrixFactory.applyDelta(prGraph, filename, settings);
+			prGraph = delta.getGraph();
+			
+			logger.info(" -----------  Applying the changes in " + filename + " -----------");
+			logger.info("Links added: " + delta.getNumberOfAddedLinks() + ", removed: " + delta.getNumberOfRemovedLinks()
+					    + ", new URLs: " + delta.getNumberOfNewNodes() + ", affected URLs: " + delta.getAffectedNodes().length);
+			
+			BaselineComparison baseline = null;
+			if (settings.isCompareBaseline()) {
+				// A whole calculation from 1/N, as done by the run mode
+				double[] initialPageRanks = new double[prGraph.getNumberOfNodes()];
+				Arrays.fill(initialPageRanks, (double)1/initialPageRanks.length);
+				baseline = BaselineComparison.run(prGraph, settings, initialPageRanks, nIterations, decay_factor, settings.getEpsilon());
+			}
+			
+			IncrementalPageRank prCalculator = new IncrementalPageRank(nIterations, decay_factor, settings.getEpsilon());
+			// Only the summary of each update, the final values are shown at the end
+			prCalculator.setVerbose(false);
+			long start = System.currentTimeMillis();
+			prCalculator.calculatePageRank(delta, settings);
+			long elapsed = System.currentTimeMillis() - start;
+			
+			if (baseline != null) {
+				baseline.log("Incremental update", prCalculator.getIterations(), elapsed, prGraph.getPageRanks());
+			}
+		}
+		
+		prGraph.printPageRanks();
+		
+		return prGraph;
+	}
+	
+	/*
+	 * Calculates the pagerank starting from the values of a previous calculation. With compare.baseline = true,
+	 * the same calculation from 1/N is run as well, to show the number of iterations saved
+	 */
+	private static void calculateFromPrevious(GraphPageRankCalculator prCalculator, PRGraph prGraph, String filename, PRSettings settings,
+			                                  int nIterations, double decay_factor) throws IOException {
+		BaselineComparison coldStart = null;
+		if (settings.isCompareBaseline()) {
+			// Still 1/N, as set by the factory. Same calculator and seeds as the warm start
+			coldStart = BaselineComparison.run(prGraph, settings, prGraph.getPageRanks(), "Cold start",
+					                           createCalculator(prGraph, settings, nIterations, decay_factor));
+		}
+		
+		PRMatrixFactory.loadPageRanks(prGraph, filename);
+		
+		// Both calculations are timed without logging, the final values are shown at the end
+		prCalculator.setVerbose(coldStart == null);
+		long start = System.currentTimeMillis();
+		prCalculator.calculatePageRank(prGraph, settings);
+		long elapsed = System.currentTimeMillis() - start;
+		
+		logger.info("Warm start from " + filename + ": " + prCalculator.getIterations() + " iterations in " + elapsed + " ms");
+		
+		if (coldStart != null) {
+			coldStart.log("Warm start", prCalculator.getIterations(), elapsed, prGraph.getPageRanks());
+			logger.info("Iterations saved by starting from " + filename + ": " + (coldStart.getIterations() - prCalculator.getIterations()));
+			prGraph.printPageRanks();
+		}
+	}
+	
+	/*
+	 * Gives the graph the node order of the settings. With compare.baseline = true, the
+	 * calculator is also run over the graph in both orders, and the time per iteration
+	 * of each one is shown. A first run, not timed, leaves the code compiled by the JIT
+	 * for both.
+	 */
+	private static PRGraph reorder(PRGraph prGraph, PRSettings settings, int nIterations, double decay_factor) throws IOException {
+		BaselineComparison originalOrder = null;
+		if (settings.isCompareBaseline()) {
+			BaselineComparison.run(prGraph, settings, prGraph.getPageRanks(), "Warm up",
+					               createCalculator(prGraph, settings, nIterations, decay_factor));
+			originalOrder = BaselineComparison.run(prGraph, settings, prGraph.getPageRanks(), "Original order",
+					                               createCalculator(prGraph, settings, nIterations, decay_factor));
+		}
+		
+		long start = System.currentTimeMillis();
+		PRGraph reordered = PRMatrixFactory.reorderPRGraph(prGraph, settings.getNodeOrder());
+		logger.info("Nodes reordered (" + settings.getNodeOrder() + ") in " + (System.currentTimeMillis() - start) + " ms");
+		
+		if (originalOrder != null) {
+			BaselineComparison newOrder = BaselineComparison.run(reordered, settings, reordered.getPageRanks(), "Reordered",
+					                                             createCalculator(reordered, settings, nIterations, decay_factor));
+			
+			logger.info(" ===== Comparison with the original order ===== ");
+			logger.info("Original order: " + originalOrder.getIterations() + " iterations, " + originalOrder.getElapsed() + " ms ("
+					    + perIteration(originalOrder) + " ms per iteration)");
+			logger.info(settings.getNodeOrder() + " order: " + newOrder.getIterations() + " iterations, " + newOrder.getElapsed() + " ms ("
+					    + perIteration(newOrder) + " ms per iteration)");
+		}
+		
+		return reordered;
+	}
+	
+	private static String perIteration(BaselineComparison baseline) {
+		return String.format("%.2f", (double)baseline.getElapsed() / Math.max(1, baseline.getIterations()));
+	}
+	
+	/*
+	 * Writes the values of each topic of the personalized calculator to <output file>.<topic>,
+	 * in the same format as the output file
+	 */
+	private static void saveTopicPageRanks(PersonalizedPageRank prCalculator, PRGraph prGraph, String filename) throws IOException {
+		String[] topics = prCalculator.getTopics();
+		
+		for (int t = 0; t < topics.length; t++) {
+			String topicFilename = filename + "." + topics[t];
+			prGraph.savePageRanks(topicFilename, prCalculator.getPageRanks(t));
+			logger.info("Pageranks of topic " + topics[t] + " saved to " + topicFilename);
+		}
+	}
+	
+	/*
+	 * Calculates the pagerank of a graph file without reading its links into memory
+	 * (see SemiExternalPageRank)
+	 */
+	private static void calculateExternal(String filename, PRSettings settings, int nIterations, double decay_factor) throws IOException {
+		ExternalPRGraph prGraph = PRMatrixFactory.buildExternalPRGraph(filename, settings);
+		
+		SemiExternalPageRank prCalculator = new SemiExternalPageRank(nIterations, decay_factor, settings.getEpsilon());
+		prCalculator.calculatePageRank(prGraph, settings);
+		
+		if (settings.getOutputFile() != null) {
+			prGraph.savePageRanks(settings.getOutputFile());
+			logger.info("Pageranks saved to " + settings.getOutputFile());
+		}
+	}
+	
+	/*
+	 * Writes a synthetic graph, as a file of links or as a graph file (generator.format)
+	 */
+	private static void generate(String model, String nURLs, String nLinks, String filename, PRSettings settings) throws IOException {
+		GraphGenerator generator = null;
+		try {
+			generator = new GraphGenerator(model, Integer.parseInt(nURLs), Long.parseLong(nLinks), settings.getGeneratorSeed());
+			generator.setDanglingFraction(settings.getGeneratorDanglingFraction());
+			generator.setSelfLinkRate(settings.getGeneratorSelfLinkRate());
+			generator.setSinkComponents(settings.getGeneratorSinkComponents(), settings.getGeneratorSinkSize());
+		} catch (IllegalArgumentException e) {
+			// NumberFormatException included
+			errorExit("Error while parsing generator parameters: " + e.getMessage());
+		}
+		
+		logger.info(" -----------  Generating a " + model + " graph with the following settings -----------");
+		logger.info("URLs: " + nURLs + ", links: " + nLinks);
+		logger.info("Seed: " + settings.getGeneratorSeed());
+		logger.info("Dangling fraction: " + settings.getGeneratorDanglingFraction());
+		logger.info("Self link rate: " + settings.getGeneratorSelfLinkRate());
+		logger.info("Sink components: " + settings.getGeneratorSinkComponents() + " of " + settings.getGeneratorSinkSize() + " URLs");
+		logger.info("Format: " + settings.getGeneratorFormat());
+		logger.info("-------------------------------------------------------");
+		
+		switch (settings.getGeneratorFormat()) {
+		case LINKS_FORMAT:
+			generator.writeLinks(filename);
+			break;
+			
+		case GRAPH_FORMAT:
+			generator.writeGraph(filename, settings.getSelfLinksPolicy() == PRMatrixPolicy.KEEP, settings.getConvertRunSize());
+			break;
+			
+		default:
+			errorExit("Unknown generator format: " + settings.getGeneratorFormat());
+		}
 	}
 	
 	/*
@@ -131,21 +580,26 @@ public class MMPageRank {
 			int nIterations = 0;
 			double decay_factor = 0.0;
 			
-			if (!(runMode.equals(CHECK_MODE) || runMode.equals(RUN_MODE))) {
-				errorExit("Valid run modes are \"check\" and \"run\" only.");
+			if (!(runMode.equals(CHECK_MODE) || runMode.equals(RUN_MODE) || runMode.equals(UPDATE_MODE) || runMode.equals(CONVERT_MODE)
+					|| runMode.equals(GENERATE_MODE))) {
+				errorExit("Valid run modes are \"check\", \"run\", \"update\", \"convert\" and \"generate\" only.");
 			}
 			
 			PRSettings settings = readSettingsFromFile("prMatrix.props");
 			try {
-				PRMatrix prMatrix = PRMatrixFactory.buildPRMatrix(inputFilename, settings);
-				
-				logger.trace(prMatrix.toString());
-				
 				if (runMode.equals(CHECK_MODE)) {
 					if (a.length > 2) {
 						errorExit("Usage: MMPageRank check <filename>");
 					}
 					
+					if (PRGraphFile.isGraphFile(inputFilename)) {
+						errorExit("Check mode needs a file of links, not a graph file");
+					}
+					
+					PRMatrix prMatrix = PRMatrixFactory.buildPRMatrix(inputFilename, settings);
+					
+					logger.trace(prMatrix.toString());
+					
 					logger.info(" -----------  Pagerank running with the following parameters -----------");
 					logger.info("Dangling Nodes (Rank leaks): " + settings.getdNodesPolicy());
 					logger.info("Self Links: " + settings.getSelfLinksPolicy());
@@ -154,10 +608,38 @@ public class MMPageRank {
 					prMatrix.printRankSinks();
 					prMatrix.printDanglingNodes();					
 				}
+				else if (runMode.equals(CONVERT_MODE)) {
+					if (a.length != 3) {
+						errorExit("Usage: MMPageRank convert <filename> <graph filename>");
+					}
+					
+					if (PRGraphFile.isGraphFile(inputFilename)) {
+						errorExit(inputFilename + " is already a graph file");
+					}
+					
+					// The links are sorted on disk, so the file can be larger than the heap
+					ExternalGraphBuilder builder = new ExternalGraphBuilder(inputFilename, settings.getSelfLinksPolicy() == PRMatrixPolicy.KEEP,
+							                                                settings.getConvertRunSize());
+					builder.write(a[2]);
+					
+					logger.info("Graph of " + inputFilename + " written to " + a[2] + ": " + builder.getNumberOfNodes() + " URLs, "
+							    + builder.getNumberOfLinks() + " links");
+				}
+				else if (runMode.equals(GENERATE_MODE)) {
+					if (a.length != 5) {
+						errorExit("Usage: MMPageRank generate <model> <number of URLs> <number of links> <filename>");
+					}
+					
+					generate(a[1], a[2], a[3], a[4], settings);
+				}
 				else {
 										
-					if (a.length < 4) {
-						errorExit("Usage MMPageRank run <filename> <number of iterations> <decay factor>");
+					if (a.length < 4 || (runMode.equals(RUN_MODE) && a.length > 5)) {
+						errorExit("Usage MMPageRank run <filename> <number of iterations> <decay factor> [<previous pageranks filename>]");
+					}
+					
+					if (runMode.equals(UPDATE_MODE) && a.length < 5) {
+						errorExit("Usage MMPageRank update <filename> <number of iterations> <decay factor> <changes filename>...");
 					}
 					
 					// Get restant parameters
@@ -174,13 +656,62 @@ public class MMPageRank {
 					logger.info("Max number of iterations: " + nIterations);
 					logger.info("Decay (Damping) factor: " + decay_factor);
 					logger.info("Error rate: " + settings.getEpsilon());
+					logger.info("Chunk size: " + settings.getChunkSize());
+					logger.info("Partition policy: " + settings.getPartitionPolicy());
+					logger.info("Calculator: " + settings.getCalculator());
+					logger.info("Node order: " + settings.getNodeOrder());
 					logger.info("-------------------------------------------------------");
 					
+					// The links are read from the graph file in each iteration
+					if (settings.getCalculator().equals(SEMI_EXTERNAL_CALCULATOR)) {
+						if (!runMode.equals(RUN_MODE) || a.length > 4) {
+							errorExit("The " + SEMI_EXTERNAL_CALCULATOR + " calculator only supports run <graph filename> <number of iterations> <decay factor>");
+						}
+						
+						if (!PRGraphFile.isGraphFile(inputFilename)) {
+							errorExit("The " + SEMI_EXTERNAL_CALCULATOR + " calculator needs a graph file, see the convert mode");
+						}
+						
+						calculateExternal(inputFilename, settings, nIterations, decay_factor);
+						return;
+					}
+					
+					// No object per link is needed for the calculation, so use the array based graph
+					PRGraph prGraph = PRMatrixFactory.buildPRGraph(inputFilename, settings);
+					
+					// Linked URLs get close ids, the results are still shown in the original order
+					if (settings.getNodeOrder() != PRNodeOrder.NONE) {
+						prGraph = reorder(prGraph, settings, nIterations, decay_factor);
+					}
+					
+					if (logger.isTraceEnabled()) {
+						logger.trace(prGraph.toString());
+					}
+					
 					// Calculate pagerank
 					
-					PageRankCalculator prCalculator = new DecayFactorPageRank(nIterations,decay_factor,settings.getEpsilon());
+					GraphPageRankCalculator prCalculator = createCalculator(prGraph, settings, nIterations, decay_factor);
 					
-					prCalculator.calculatePageRank(prMatrix, settings);
+					if (runMode.equals(RUN_MODE) && a.length == 5) {
+						calculateFromPrevious(prCalculator, prGraph, a[4], settings, nIterations, decay_factor);
+					}
+					else {
+						prCalculator.calculatePageRank(prGraph, settings);
+					}
+					
+					if (runMode.equals(UPDATE_MODE)) {
+						prGraph = applyChanges(prGraph, Arrays.copyOfRange(a, 4, a.length), settings, nIterations, decay_factor);
+					}
+					
+					if (settings.getOutputFile() != null) {
+						prGraph.savePageRanks(settings.getOutputFile());
+						logger.info("Pageranks saved to " + settings.getOutputFile());
+						
+						// The topics are those of the graph before the changes
+						if (prCalculator instanceof PersonalizedPageRank && runMode.equals(RUN_MODE)) {
+							saveTopicPageRanks((PersonalizedPageRank)prCalculator, prGraph, settings.getOutputFile());
+						}
+					}
 				}
 				
 			} catch (MalformedEntryException | IOException e) {
@@ -0,0 +1,201 @@
+package org.mmg.pagerank;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.mmg.pagerank.matrix.PRGraph;
+import org.mmg.pagerank.matrix.PRMatrixPolicy;
+
+/**
+ * Estimates the pagerank values with random walks instead of iterating: R walks are
+ * started from every node, and each step follows a random outgoing link with probability
+ * decay_factor or ends the walk otherwise. The pagerank of a node is estimated from the
+ * number of times the walks go through it (the "complete path" method of "Monte Carlo
+ * methods in PageRank computation: When one iteration is sufficient", Avrachenkov et al.):
+ * <br>
+ * <br>
+ * r(i) = (1 - decay_factor) * visits(i) / (N * R)
+ * <br>
+ * <br>
+ * A walk reaching a dangling node jumps to a random URL (itself only if self links are
+ * kept) when dangling.nodes.policy = keep, and ends otherwise, which matches the rank
+ * leak of the other calculators.
+ * <br>
+ * <br>
+ * All the walks are run in a single parallel pass. Each thread has its own random number
+ * generator and visit counters, which are added up at the end. The error is of the order
+ * of 1 / sqrt(visits(i)): with compare.baseline = true, the L1 difference with the power
+ * method is shown.
+ *
+ * @author Manuel Medina González
+ * @see DecayFactorPageRank
+ *
+ */
+public class MonteCarloPageRank extends GraphPageRankCalculator {
+	
+	public MonteCarloPageRank(int maxIterations, double damping_factor, double epsilon) {
+		super(maxIterations, damping_factor, epsilon);
+	}
+	
+	public void calculatePageRank(PRGraph prGraph, PRSettings settings) {
+		BaselineComparison baseline = null;
+		
+		if (settings.isCompareBaseline()) {
+			baseline = BaselineComparison.run(prGraph, settings, prGraph.getPageRanks(), maxIterations, damping_factor, epsilon);
+		}
+		
+		long start = System.currentTimeMillis();
+		int n = prGraph.getNumberOfNodes();
+		int chunkSize = Math.max(1, settings.getChunkSize());
+		int nWalks = Math.max(1, settings.getMonteCarloWalks());
+		double[] pageRanks = prGraph.getPageRanks();
+		
+		// Visit counters of each thread, created the first time the thread runs a walk
+		final List<int[]> allVisits = new ArrayList<int[]>();
+		final int size = n;
+		ThreadLocal<int[]> visits = new ThreadLocal<int[]>() {
+			@Override
+			protected int[] initialValue() {
+				int[] threadVisits = new int[size];
+				synchronized (allVisits) {
+					allVisits.add(threadVisits);
+				}
+				
+				return threadVisits;
+			}
+		};
+		
+		ForkJoinPool pool = new ForkJoinPool(NTHREADS);
+		
+		if (verbose) {
+			logger.info("Number of threads: " + NTHREADS);
+			logger.info("Random walks per URL: " + nWalks);
+		}
+		
+		long nSteps = pool.invoke(new RandomWalkCalculator(prGraph, settings, damping_factor, nWalks, visits, 0, n, chunkSize));
+		
+		pool.shutdown();
+		
+		for (int v = 0; v < n; v++) {
+			long total = 0;
+			for (int[] threadVisits : allVisits) {
+				total += threadVisits[v];
+			}
+			
+			pageRanks[v] = (1 - damping_factor) * total / ((double)n * nWalks);
+		}
+		
+		long elapsed = System.currentTimeMillis() - start;
+		
+		logFinished(prGraph, 1);
+		logger.info("Walks: " + ((long)n * nWalks) + ". Steps: " + nSteps + ". Total time: " + elapsed + " ms");
+		
+		if (baseline != null) {
+			baseline.log("Monte Carlo, " + nWalks + " walks per URL", 1, elapsed, pageRanks);
+		}
+	}
+}
+
+/**
+ * Runs the random walks that start from a contiguous range of nodes, splitting it
+ * into halves until it is no larger than the chunk size.
+ * <br>
+ * The visits are added to the counters of the thread running the task. Returns the
+ * number of steps of the walks.
+ *
+ * @author Manuel Medina González
+ *
+ */
+class RandomWalkCalculator extends RecursiveTask<Long> {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private PRGraph prGraph;
+	private PRSettings settings;
+	private double damping_factor;
+	// Walks started from each node
+	private int nWalks;
+	private ThreadLocal<int[]> visits;
+	// Range of node ids [from, to)
+	private int from;
+	private int to;
+	private int chunkSize;
+	
+	public RandomWalkCalculator(PRGraph prGraph,
+			                        PRSettings settings,
+			                        double damping_factor,
+			                        int nWalks,
+			                        ThreadLocal<int[]> visits,
+			                        int from,
+			                        int to,
+			                        int chunkSize) {
+		this.prGraph = prGraph;
+		this.settings = settings;
+		this.damping_factor = damping_factor;
+		this.nWalks = nWalks;
+		this.visits = visits;
+		this.from = from;
+		this.to = to;
+		this.chunkSize = chunkSize;
+	}
+	
+	@Override
+	protected Long compute() {
+		if (to - from > chunkSize) {
+			int middle = (from + to) >>> 1;
+			RandomWalkCalculator left = new RandomWalkCalculator(prGraph, settings, damping_factor, nWalks, visits, from, middle, chunkSize);
+			RandomWalkCalculator right = new RandomWalkCalculator(prGraph, settings, damping_factor, nWalks, visits, middle, to, chunkSize);
+			left.fork();
+			long rightSteps = right.compute();
+			
+			return left.join() + rightSteps;
+		}
+		
+		int n = prGraph.getNumberOfNodes();
+		int[] outOffsets = prGraph.getOutLinkOffsets();
+		int[] targets = prGraph.getOutLinkTargets();
+		boolean keepDangling = settings.getdNodesPolicy() == PRMatrixPolicy.KEEP;
+		boolean keepSelfLinks = settings.getSelfLinksPolicy() == PRMatrixPolicy.KEEP;
+		int[] threadVisits = visits.get();
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long nSteps = 0;
+		
+		for (int u = from; u < to; u++) {
+			for (int w = 0; w < nWalks; w++) {
+				int v = u;
+				
+				while (true) {
+					threadVisits[v]++;
+					
+					if (random.nextDouble() >= damping_factor) {
+						break;
+					}
+					
+					int degree = outOffsets[v + 1] - outOffsets[v];
+					if (degree > 0) {
+						v = targets[outOffsets[v] + random.nextInt(degree)];
+					}
+					// Handling dangling nodes = KEEP: a link to every node
+					else if (keepDangling && keepSelfLinks) {
+						v = random.nextInt(n);
+					}
+					else if (keepDangling && n > 1) {
+						// Any node but itself
+						int next = random.nextInt(n - 1);
+						v = next >= v ? next + 1 : next;
+					}
+					else {
+						break;
+					}
+					
+					nSteps++;
+				}
+			}
+		}
+		
+		return nSteps;
+	}
+}
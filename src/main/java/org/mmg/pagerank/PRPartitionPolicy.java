@@ -0,0 +1,19 @@
+package org.mmg.pagerank;
+
+/**
+ * Defines how the work of an iteration is split among the parallel tasks.
+ * <br>
+ * <br>
+ * NODES: Each task calculates the same number of consecutive nodes.
+ * <br>
+ * EDGES: Each task processes the same number of incoming links (plus one unit per node),
+ * splitting the incoming links of a single node among several tasks if needed.
+ * 
+ * @author Manuel Medina González
+ *
+ */
+public enum PRPartitionPolicy {
+
+	NODES,
+	EDGES;
+}
@@ -14,6 +14,37 @@ public class PRSettings {
 	private PRMatrixPolicy dNodesPolicy;
 	private PRMatrixPolicy selfLinksPolicy;
 	private double epsilon;
+	// Number of nodes (or links) calculated by each parallel task
+	private int chunkSize;
+	private PRPartitionPolicy partitionPolicy;
+	// Name of the calculator used in run mode
+	private String calculator;
+	// Whether calculators compare themselves against the plain power method
+	private boolean compareBaseline;
+	private String extrapolationMethod;
+	private int extrapolationFrequency;
+	// Relative change under which a node is considered stable by the adaptive calculator
+	private double adaptiveThreshold;
+	// Consecutive stable iterations before a node is frozen
+	private int adaptiveStableIterations;
+	private String outputFile;
+	private String seedsFile;
+	private int monteCarloWalks;
+	private String pushSourceURL;
+	// Number of links read at once by the semi-external calculator
+	private int externalBlockSize;
+	private boolean externalPrefetch;
+	// Number of links sorted in memory at once by the convert mode
+	private int convertRunSize;
+	// Order of the node ids during the calculation
+	private PRNodeOrder nodeOrder;
+	// Synthetic graphs of the generate mode
+	private String generatorFormat;
+	private long generatorSeed;
+	private double generatorDanglingFraction;
+	private double generatorSelfLinkRate;
+	private int generatorSinkComponents;
+	private int generatorSinkSize;
 	
 	public PRMatrixPolicy getdNodesPolicy() {
 		return dNodesPolicy;
@@ -33,6 +64,138 @@ public class PRSettings {
 	public void setEpsilon(double epsilon) {
 		this.epsilon = epsilon;
 	}
+	public int getChunkSize() {
+		return chunkSize;
+	}
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+	public PRPartitionPolicy getPartitionPolicy() {
+		return partitionPolicy;
+	}
+	public void setPartitionPolicy(PRPartitionPolicy partitionPolicy) {
+		this.partitionPolicy = partitionPolicy;
+	}
+	public String getCalculator() {
+		return calculator;
+	}
+	public void setCalculator(String calculator) {
+		this.calculator = calculator;
+	}
+	public boolean isCompareBaseline() {
+		return compareBaseline;
+	}
+	public void setCompareBaseline(boolean compareBaseline) {
+		this.compareBaseline = compareBaseline;
+	}
+	public String getExtrapolationMethod() {
+		return extrapolationMethod;
+	}
+	public void setExtrapolationMethod(String extrapolationMethod) {
+		this.extrapolationMethod = extrapolationMethod;
+	}
+	public int getExtrapolationFrequency() {
+		return extrapolationFrequency;
+	}
+	public void setExtrapolationFrequency(int extrapolationFrequency) {
+		this.extrapolationFrequency = extrapolationFrequency;
+	}
+	public double getAdaptiveThreshold() {
+		return adaptiveThreshold;
+	}
+	public void setAdaptiveThreshold(double adaptiveThreshold) {
+		this.adaptiveThreshold = adaptiveThreshold;
+	}
+	public int getAdaptiveStableIterations() {
+		return adaptiveStableIterations;
+	}
+	public void setAdaptiveStableIterations(int adaptiveStableIterations) {
+		this.adaptiveStableIterations = adaptiveStableIterations;
+	}
+	public String getOutputFile() {
+		return outputFile;
+	}
+	public void setOutputFile(String outputFile) {
+		this.outputFile = outputFile;
+	}
+	public String getSeedsFile() {
+		return seedsFile;
+	}
+	public void setSeedsFile(String seedsFile) {
+		this.seedsFile = seedsFile;
+	}
+	public int getMonteCarloWalks() {
+		return monteCarloWalks;
+	}
+	public void setMonteCarloWalks(int monteCarloWalks) {
+		this.monteCarloWalks = monteCarloWalks;
+	}
+	public String getPushSourceURL() {
+		return pushSourceURL;
+	}
+	public void setPushSourceURL(String pushSourceURL) {
+		this.pushSourceURL = pushSourceURL;
+	}
+	public int getExternalBlockSize() {
+		return externalBlockSize;
+	}
+	public void setExternalBlockSize(int externalBlockSize) {
+		this.externalBlockSize = externalBlockSize;
+	}
+	public boolean isExternalPrefetch() {
+		return externalPrefetch;
+	}
+	public void setExternalPrefetch(boolean externalPrefetch) {
+		this.externalPrefetch = externalPrefetch;
+	}
+	public int getConvertRunSize() {
+		return convertRunSize;
+	}
+	public void setConvertRunSize(int convertRunSize) {
+		this.convertRunSize = convertRunSize;
+	}
+	public PRNodeOrder getNodeOrder() {
+		return nodeOrder;
+	}
+	public void setNodeOrder(PRNodeOrder nodeOrder) {
+		this.nodeOrder = nodeOrder;
+	}
+	public String getGeneratorFormat() {
+		return generatorFormat;
+	}
+	public void setGeneratorFormat(String generatorFormat) {
+		this.generatorFormat = generatorFormat;
+	}
+	public long getGeneratorSeed() {
+		return generatorSeed;
+	}
+	public void setGeneratorSeed(long generatorSeed) {
+		this.generatorSeed = generatorSeed;
+	}
+	public double getGeneratorDanglingFraction() {
+		return generatorDanglingFraction;
+	}
+	public void setGeneratorDanglingFraction(double generatorDanglingFraction) {
+		this.generatorDanglingFraction = generatorDanglingFraction;
+	}
+	public double getGeneratorSelfLinkRate() {
+		return generatorSelfLinkRate;
+	}
+	public void setGeneratorSelfLinkRate(double generatorSelfLinkRate) {
+		this.generatorSelfLinkRate = generatorSelfLinkRate;
+	}
+	public int getGeneratorSinkComponents() {
+		return generatorSinkComponents;
+	}
+	public void setGeneratorSinkComponents(int generatorSinkComponents) {
+		this.generatorSinkComponents = generatorSinkComponents;
+	}
+	public int getGeneratorSinkSize() {
+		return generatorSinkSize;
+	}
+	public void setGeneratorSinkSize(int generatorSinkSize) {
+		this.generatorSinkSize = generatorSinkSize;
+	}
 	
 	
 	
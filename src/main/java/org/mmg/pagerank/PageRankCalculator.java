@@ -1,5 +1,6 @@
 package org.mmg.pagerank;
 
+import org.mmg.pagerank.matrix.PRGraph;
 import org.mmg.pagerank.matrix.PRMatrix;
 
 /**
@@ -12,4 +13,6 @@ import org.mmg.pagerank.matrix.PRMatrix;
 public interface PageRankCalculator {
 
 	public void calculatePageRank(PRMatrix prMatrix, PRSettings settings);
+	
+	public void calculatePageRank(PRGraph prGraph, PRSettings settings);
 }
@@ -0,0 +1,321 @@
+package org.mmg.pagerank;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.mmg.pagerank.matrix.PRGraph;
+
+/**
+ * Personalized (topic-sensitive) pagerank: instead of jumping to any URL with the
+ * same probability, the random surfer of each topic jumps to one of its seed URLs.
+ * <br>
+ * <br>
+ * r(i, t) = decay_factor * Sum(r(j, t)/N(j)) + (1 - decay_factor) * s(i, t)
+ * <br>
+ * <br>
+ * Where s(i, t) = 1 / |S(t)| if i is one of the seeds S(t) of topic t, 0 otherwise.
+ * <br>
+ * <br>
+ * The k topics are calculated together, as power iterations (see DecayFactorPageRank) over
+ * an N x k block of values: the k values of a node are contiguous, so each incoming link
+ * is read once per iteration for all the topics. The iterations stop once every topic
+ * has converged. The pagerank of the dangling nodes (dangling.nodes.policy = keep) is
+ * spread over every node as in the rest of calculators.
+ * <br>
+ * <br>
+ * As the values are linear in s, the average of the topics is the pagerank of the average
+ * of their seed distributions: that is what is left in the PRGraph.
+ * Without seeds, a single topic with every URL as seed is used (the plain pagerank).
+ *
+ * @author Manuel Medina González
+ * @see DecayFactorPageRank
+ *
+ */
+public class PersonalizedPageRank extends GraphPageRankCalculator {
+	
+	// Number of URLs shown per topic
+	private static final int TOP_URLS = 10;
+	
+	private LinkedHashMap<String, int[]> seeds;
+	private String[] topics;
+	// Values of node v for topic t at position v * k + t
+	private double[] pageRanks;
+	
+	public PersonalizedPageRank(int maxIterations, double damping_factor, double epsilon) {
+		super(maxIterations, damping_factor, epsilon);
+	}
+	
+	/**
+	 * @param seeds The ids of the seed URLs of each topic (see PRMatrixFactory.loadSeeds)
+	 */
+	public void setSeeds(LinkedHashMap<String, int[]> seeds) {
+		this.seeds = seeds;
+	}
+	
+	public void calculatePageRank(PRGraph prGraph, PRSettings settings) {
+		long start = System.currentTimeMillis();
+		int n = prGraph.getNumberOfNodes();
+		int chunkSize = Math.max(1, settings.getChunkSize());
+		
+		LinkedHashMap<String, int[]> topicSeeds = seeds;
+		if (topicSeeds == null || topicSeeds.isEmpty()) {
+			int[] allNodes = new int[n];
+			for (int v = 0; v < n; v++) {
+				allNodes[v] = v;
+			}
+			topicSeeds = new LinkedHashMap<String, int[]>();
+			topicSeeds.put("all", allNodes);
+		}
+		
+		int k = topicSeeds.size();
+		if ((long)n * k > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many values for a single block: " + n + " URLs x " + k + " topics");
+		}
+		
+		// Teleport term of each node and topic
+		topics = new String[k];
+		double[] teleport = new double[n * k];
+		int t = 0;
+		for (Entry<String, int[]> topic : topicSeeds.entrySet()) {
+			topics[t] = topic.getKey();
+			for (int v : topic.getValue()) {
+				teleport[v * k + t] = (1 - damping_factor) / topic.getValue().length;
+			}
+			t++;
+		}
+		
+		// Double buffered blocks, starting from the current values of the graph for every topic
+		double[] previous = new double[n * k];
+		double[] current = new double[n * k];
+		double[] initialPageRanks = prGraph.getPageRanks();
+		for (int v = 0; v < n; v++) {
+			Arrays.fill(previous, v * k, (v + 1) * k, initialPageRanks[v]);
+		}
+		
+		DanglingMass dm = new DanglingMass(n, settings);
+		ForkJoinPool pool = new ForkJoinPool(NTHREADS);
+		
+		if (verbose) {
+			logger.info("Number of threads: " + NTHREADS);
+			logger.info("Topics: " + Arrays.toString(topics));
+		}
+		
+		int cntIterations = 0;
+		double currentError = 1.0;
+		
+		// Main loop
+		while (cntIterations < maxIterations && currentError > epsilon) {
+			double[] danglingMass = new double[k];
+			for (int d : prGraph.getDanglingNodes()) {
+				for (t = 0; t < k; t++) {
+					danglingMass[t] += previous[d * k + t];
+				}
+			}
+			
+			// invoke() only returns once all the chunks are done: this is the iteration barrier
+			double[] errors = pool.invoke(new BlockPageRankCalculator(prGraph, dm, danglingMass, damping_factor, teleport, k,
+					                                                      previous, current, 0, n, chunkSize));
+			
+			double[] tmp = previous;
+			previous = current;
+			current = tmp;
+			
+			// The topic furthest from converging
+			currentError = 0.0;
+			for (t = 0; t < k; t++) {
+				currentError = Math.max(currentError, errors[t]);
+			}
+			
+			if (verbose) {
+				logger.info(" ========= Iteration " + (cntIterations + 1) + " ========= ");
+				logger.info("Current error rate per topic: " + Arrays.toString(errors) + System.getProperty("line.separator"));
+			}
+			cntIterations += 1;
+		}
+		
+		pool.shutdown();
+		
+		pageRanks = previous;
+		
+		// Average of the topics
+		double[] graphPageRanks = prGraph.getPageRanks();
+		for (int v = 0; v < n; v++) {
+			double sum = 0.0;
+			for (t = 0; t < k; t++) {
+				sum += pageRanks[v * k + t];
+			}
+			graphPageRanks[v] = sum / k;
+		}
+		
+		long elapsed = System.currentTimeMillis() - start;
+		
+		if (verbose) {
+			for (t = 0; t < k; t++) {
+				logTopURLs(prGraph, t);
+			}
+		}
+		
+		logFinished(prGraph, cntIterations);
+		logger.info("Topics calculated: " + k + ". Total time: " + elapsed + " ms");
+	}
+	
+	/**
+	 * @return The names of the topics of the last calculation
+	 */
+	public String[] getTopics() {
+		return topics;
+	}
+	
+	/**
+	 * @return The pagerank values of the given topic (index in getTopics())
+	 */
+	public double[] getPageRanks(int topic) {
+		int k = topics.length;
+		double[] values = new double[pageRanks.length / k];
+		for (int v = 0; v < values.length; v++) {
+			values[v] = pageRanks[v * k + topic];
+		}
+		
+		return values;
+	}
+	
+	/*
+	 * Shows the URLs with the highest pagerank for a topic
+	 */
+	private void logTopURLs(PRGraph prGraph, int topic) {
+		int k = topics.length;
+		int n = prGraph.getNumberOfNodes();
+		int nTop = Math.min(TOP_URLS, n);
+		// Ids sorted by decreasing value, by insertion
+		int[] top = new int[nTop];
+		int size = 0;
+		
+		for (int v = 0; v < n; v++) {
+			double value = pageRanks[v * k + topic];
+			if (size == nTop && value <= pageRanks[top[size - 1] * k + topic]) {
+				continue;
+			}
+			
+			int i = size < nTop ? size++ : size - 1;
+			while (i > 0 && pageRanks[top[i - 1] * k + topic] < value) {
+				top[i] = top[i - 1];
+				i--;
+			}
+			top[i] = v;
+		}
+		
+		logger.info(" ==> Top pageranks for topic " + topics[topic] + ": ");
+		for (int i = 0; i < size; i++) {
+			logger.info(prGraph.getURL(top[i]) + " => " + pageRanks[top[i] * k + topic]);
+		}
+	}
+}
+
+/**
+ * Calculates the current values of all the topics for a contiguous range of nodes,
+ * splitting it into halves until it is no larger than the chunk size.
+ * <br>
+ * Returns the L1 norm between the previous values of the range and the current ones,
+ * per topic.
+ *
+ * @author Manuel Medina González
+ *
+ */
+class BlockPageRankCalculator extends RecursiveTask<double[]> {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private PRGraph prGraph;
+	private DanglingMass dm;
+	// Per topic
+	private double[] danglingMass;
+	private double damping_factor;
+	private double[] teleport;
+	// Number of topics
+	private int k;
+	// Blocks of N x k values of the previous iteration (read only) and the current one
+	private double[] previous;
+	private double[] current;
+	// Range of node ids [from, to)
+	private int from;
+	private int to;
+	private int chunkSize;
+	
+	public BlockPageRankCalculator(PRGraph prGraph,
+			                           DanglingMass dm,
+			                           double[] danglingMass,
+			                           double damping_factor,
+			                           double[] teleport,
+			                           int k,
+			                           double[] previous,
+			                           double[] current,
+			                           int from,
+			                           int to,
+			                           int chunkSize) {
+		this.prGraph = prGraph;
+		this.dm = dm;
+		this.danglingMass = danglingMass;
+		this.damping_factor = damping_factor;
+		this.teleport = teleport;
+		this.k = k;
+		this.previous = previous;
+		this.current = current;
+		this.from = from;
+		this.to = to;
+		this.chunkSize = chunkSize;
+	}
+	
+	@Override
+	protected double[] compute() {
+		if (to - from > chunkSize) {
+			int middle = (from + to) >>> 1;
+			BlockPageRankCalculator left = new BlockPageRankCalculator(prGraph, dm, danglingMass, damping_factor, teleport, k,
+					                                                     previous, current, from, middle, chunkSize);
+			BlockPageRankCalculator right = new BlockPageRankCalculator(prGraph, dm, danglingMass, damping_factor, teleport, k,
+					                                                      previous, current, middle, to, chunkSize);
+			left.fork();
+			double[] errors = right.compute();
+			double[] leftErrors = left.join();
+			
+			for (int t = 0; t < k; t++) {
+				errors[t] += leftErrors[t];
+			}
+			
+			return errors;
+		}
+		
+		int[] offsets = prGraph.getInLinkOffsets();
+		int[] sources = prGraph.getInLinkSources();
+		int[] outDegree = prGraph.getOutDegrees();
+		double[] errors = new double[k];
+		double[] tempCalc = new double[k];
+		
+		for (int v = from; v < to; v++) {
+			Arrays.fill(tempCalc, 0.0);
+			
+			// Each incoming link is read once for all the topics
+			for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+				int source = sources[e] * k;
+				double weight = 1.0 / outDegree[sources[e]];
+				
+				for (int t = 0; t < k; t++) {
+					tempCalc[t] += previous[source + t] * weight;
+				}
+			}
+			
+			int base = v * k;
+			for (int t = 0; t < k; t++) {
+				// Handling dangling nodes = KEEP
+				double value = tempCalc[t] + dm.contribution(danglingMass[t], previous[base + t], outDegree[v] == 0);
+				
+				current[base + t] = damping_factor * value + teleport[base + t];
+				errors[t] += Math.abs(current[base + t] - previous[base + t]);
+			}
+		}
+		
+		return errors;
+	}
+}
@@ -0,0 +1,364 @@
+package org.mmg.pagerank;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.mmg.pagerank.matrix.PRGraph;
+
+/**
+ * Forward push (residual propagation): instead of sweeping over all the nodes, each
+ * node keeps a residual, the pagerank it has received but not passed on yet. Pushing a
+ * node adds its residual to its pagerank and sends decay_factor times the residual to the
+ * URLs it links to, split evenly. Only the nodes whose residual is over a threshold are
+ * pushed, so the work goes where the pagerank still moves.
+ * <br>
+ * <br>
+ * Two modes:
+ * <br>
+ * - Global (push.source.url not set): every node starts with a residual of
+ * (1 - decay_factor) / N, which gives the same values as DecayFactorPageRank. A node is
+ * pushed while its residual is over error rate * (N(i) + 1) / (N + L), so the residual
+ * left adds up to less than the error rate.
+ * <br>
+ * - Single source (push.source.url set): personalized pagerank of a URL. The URL starts
+ * with a residual of 1 - decay_factor, and a node is pushed while its residual is over
+ * error rate * (N(i) + 1). Only the neighborhood where the pagerank is significant is
+ * ever touched, however large the graph. The error rate is per link here, not divided by
+ * N + L, so it has to be much smaller than in global mode.
+ * <br>
+ * <br>
+ * A residual r still becomes r / (1 - decay_factor) of pagerank once pushed, so the sum
+ * of the residuals left over 1 - decay_factor bounds the L1 error of the result.
+ * <br>
+ * <br>
+ * The pagerank of the dangling nodes (dangling.nodes.policy = keep) goes where the random
+ * surfer jumps: to every node in global mode and to the source URL in single source mode.
+ * In global mode it is added up and given to all the residuals at once when it is over
+ * the threshold, and a dangling node pushes its residual minus the share it would get
+ * back, as it does not link to itself.
+ * <br>
+ * <br>
+ * The nodes to push are processed in rounds on a ForkJoinPool. Residuals are updated
+ * atomically, and each task keeps its own queue of the nodes whose residual goes over the
+ * threshold, which are pushed in the next round. A flag per node, set with compare and
+ * set, tells whether it is already queued, so no node is queued twice.
+ *
+ * @author Manuel Medina González
+ * @see DecayFactorPageRank
+ *
+ */
+public class PushPageRank extends GraphPageRankCalculator {
+	
+	// Number of distinct nodes pushed by the last calculation
+	private int touched;
+	// Number of pushes performed by the last calculation
+	private long nPushes;
+	
+	public PushPageRank(int maxIterations, double damping_factor, double epsilon) {
+		super(maxIterations, damping_factor, epsilon);
+	}
+	
+	public void calculatePageRank(PRGraph prGraph, PRSettings settings) {
+		BaselineComparison baseline = null;
+		String sourceURL = settings.getPushSourceURL();
+		
+		if (settings.isCompareBaseline() && sourceURL == null) {
+			baseline = BaselineComparison.run(prGraph, settings, prGraph.getPageRanks(), maxIterations, damping_factor, epsilon);
+		}
+		
+		long start = System.currentTimeMillis();
+		int n = prGraph.getNumberOfNodes();
+		int chunkSize = Math.max(1, settings.getChunkSize());
+		double[] pageRanks = prGraph.getPageRanks();
+		AtomicLongArray residuals = new AtomicLongArray(n);
+		// 1 while the node is in the queue
+		AtomicIntegerArray queued = new AtomicIntegerArray(n);
+		int source = -1;
+		double threshold;
+		int[] queue;
+		
+		if (sourceURL != null) {
+			source = prGraph.getId(sourceURL);
+			if (source == -1) {
+				throw new IllegalArgumentException("URL not found in the graph: " + sourceURL);
+			}
+			
+			threshold = epsilon;
+			residuals.set(source, Double.doubleToRawLongBits(1 - damping_factor));
+			queued.set(source, 1);
+			queue = new int[] { source };
+		}
+		else {
+			threshold = epsilon / (n + prGraph.getNumberOfEdges());
+			queue = new int[n];
+			for (int v = 0; v < n; v++) {
+				residuals.set(v, Double.doubleToRawLongBits((1 - damping_factor) / n));
+				queued.set(v, 1);
+				queue[v] = v;
+			}
+		}
+		
+		// Pushed nodes keep their values, the rest are 0
+		Arrays.fill(pageRanks, 0.0);
+		
+		DanglingMass dm = new DanglingMass(n, settings);
+		ForkJoinPool pool = new ForkJoinPool(NTHREADS);
+		boolean[] pushed = new boolean[n];
+		
+		if (verbose) {
+			logger.info("Number of threads: " + NTHREADS);
+			logger.info(source == -1 ? "Global pagerank" : "Personalized pagerank of " + sourceURL);
+		}
+		
+		int nQueued = queue.length;
+		// Dangling nodes pagerank not yet given to every node (global mode)
+		double pending = 0.0;
+		int cntRounds = 0;
+		nPushes = 0;
+		
+		// Main loop
+		// Each push takes at least (1 - decay_factor) * threshold out of the residuals, so it always ends
+		while (nQueued > 0) {
+			PushResult result = pool.invoke(new PushCalculator(prGraph, dm, damping_factor, threshold, source, residuals, queued,
+					                                               pageRanks, pushed, queue, 0, nQueued, chunkSize));
+			
+			nPushes += nQueued;
+			pending += result.pending;
+			queue = result.queue;
+			nQueued = result.size;
+			
+			if (pending > threshold || (nQueued == 0 && pending > 0)) {
+				// Every node gets it at once
+				int[] outDegree = prGraph.getOutDegrees();
+				int[] next = Arrays.copyOf(queue, Math.max(16, nQueued));
+				for (int v = 0; v < n; v++) {
+					double limit = threshold * (outDegree[v] + 1);
+					double after = Double.longBitsToDouble(residuals.get(v)) + pending;
+					residuals.set(v, Double.doubleToRawLongBits(after));
+					
+					if (after > limit && queued.get(v) == 0) {
+						queued.set(v, 1);
+						if (nQueued == next.length) {
+							next = Arrays.copyOf(next, nQueued * 2);
+						}
+						next[nQueued++] = v;
+					}
+				}
+				queue = next;
+				pending = 0.0;
+			}
+			
+			if (verbose) {
+				logger.info(" ========= Round " + (cntRounds + 1) + " ========= ");
+				logger.info("Nodes pushed: " + nPushes + " in total, " + nQueued + " to push next");
+			}
+			cntRounds += 1;
+		}
+		
+		pool.shutdown();
+		
+		touched = 0;
+		double residual = pending * n;
+		for (int v = 0; v < n; v++) {
+			residual += Double.longBitsToDouble(residuals.get(v));
+			if (pushed[v]) {
+				touched++;
+			}
+		}
+		
+		long elapsed = System.currentTimeMillis() - start;
+		
+		logFinished(prGraph, cntRounds);
+		logger.info("Touched nodes: " + touched + " of " + n + ". Pushes: " + nPushes + ". Pagerank left to push: "
+				    + residual / (1 - damping_factor) + ". Total time: " + elapsed + " ms");
+		
+		if (baseline != null) {
+			baseline.log("Forward push", cntRounds, elapsed, pageRanks);
+		}
+	}
+	
+	public int getTouchedNodes() {
+		return touched;
+	}
+	
+	public long getNumberOfPushes() {
+		return nPushes;
+	}
+}
+
+/**
+ * What a range of the nodes to push leaves for the next round: the nodes whose residual
+ * went over the threshold, and the pagerank of the pushed dangling nodes that goes to
+ * every node.
+ *
+ * @author Manuel Medina González
+ *
+ */
+class PushResult {
+	
+	int[] queue;
+	int size;
+	double pending;
+	
+	PushResult(int[] queue, int size, double pending) {
+		this.queue = queue;
+		this.size = size;
+		this.pending = pending;
+	}
+}
+
+/**
+ * Pushes a range of the queued nodes, splitting it into halves until it is no larger
+ * than the chunk size.
+ * <br>
+ * Each node of the queue appears once, so its pagerank is only updated by one task.
+ * Residuals are updated with compare and set, and a node whose residual is over the
+ * threshold is queued by the task that sets its queued flag. The flag is cleared before
+ * the residual is taken, so an addition made after that queues the node again.
+ *
+ * @author Manuel Medina González
+ *
+ */
+class PushCalculator extends RecursiveTask<PushResult> {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private PRGraph prGraph;
+	private DanglingMass dm;
+	private double damping_factor;
+	// Per link, see PushPageRank
+	private double threshold;
+	// -1 in global mode
+	private int source;
+	private AtomicLongArray residuals;
+	private AtomicIntegerArray queued;
+	private double[] pageRanks;
+	private boolean[] pushed;
+	private int[] queue;
+	// Range of positions of the queue [from, to)
+	private int from;
+	private int to;
+	private int chunkSize;
+	
+	public PushCalculator(PRGraph prGraph,
+			                  DanglingMass dm,
+			                  double damping_factor,
+			                  double threshold,
+			                  int source,
+			                  AtomicLongArray residuals,
+			                  AtomicIntegerArray queued,
+			                  double[] pageRanks,
+			                  boolean[] pushed,
+			                  int[] queue,
+			                  int from,
+			                  int to,
+			                  int chunkSize) {
+		this.prGraph = prGraph;
+		this.dm = dm;
+		this.damping_factor = damping_factor;
+		this.threshold = threshold;
+		this.source = source;
+		this.residuals = residuals;
+		this.queued = queued;
+		this.pageRanks = pageRanks;
+		this.pushed = pushed;
+		this.queue = queue;
+		this.from = from;
+		this.to = to;
+		this.chunkSize = chunkSize;
+	}
+	
+	@Override
+	protected PushResult compute() {
+		if (to - from > chunkSize) {
+			int middle = (from + to) >>> 1;
+			PushCalculator left = new PushCalculator(prGraph, dm, damping_factor, threshold, source, residuals, queued,
+					                                     pageRanks, pushed, queue, from, middle, chunkSize);
+			PushCalculator right = new PushCalculator(prGraph, dm, damping_factor, threshold, source, residuals, queued,
+					                                      pageRanks, pushed, queue, middle, to, chunkSize);
+			left.fork();
+			PushResult rightResult = right.compute();
+			PushResult leftResult = left.join();
+			
+			int[] next = Arrays.copyOf(leftResult.queue, leftResult.size + rightResult.size);
+			System.arraycopy(rightResult.queue, 0, next, leftResult.size, rightResult.size);
+			
+			return new PushResult(next, next.length, leftResult.pending + rightResult.pending);
+		}
+		
+		int[] outDegree = prGraph.getOutDegrees();
+		int[] outOffsets = prGraph.getOutLinkOffsets();
+		int[] targets = prGraph.getOutLinkTargets();
+		// This task's queue for the next round
+		int[] next = new int[16];
+		int nNext = 0;
+		double pending = 0.0;
+		
+		for (int i = from; i < to; i++) {
+			int u = queue[i];
+			queued.set(u, 0);
+			double residual = Double.longBitsToDouble(residuals.getAndSet(u, Double.doubleToRawLongBits(0.0)));
+			
+			// A dangling node does not link to itself, but gets its share of the pending pagerank
+			if (source == -1 && outDegree[u] == 0) {
+				residual -= damping_factor * residual * dm.ownShare(true);
+			}
+			
+			pageRanks[u] += residual;
+			pushed[u] = true;
+			
+			double mass = damping_factor * residual;
+			
+			if (outDegree[u] > 0) {
+				double share = mass / outDegree[u];
+				for (int e = outOffsets[u]; e < outOffsets[u + 1]; e++) {
+					int w = targets[e];
+					if (add(w, share, outDegree)) {
+						if (nNext == next.length) {
+							next = Arrays.copyOf(next, nNext * 2);
+						}
+						next[nNext++] = w;
+					}
+				}
+			}
+			// Handling dangling nodes = KEEP
+			else if (dm.share() > 0) {
+				if (source != -1) {
+					// Where the random surfer jumps
+					if (add(source, mass, outDegree)) {
+						if (nNext == next.length) {
+							next = Arrays.copyOf(next, nNext * 2);
+						}
+						next[nNext++] = source;
+					}
+				}
+				else {
+					pending += mass * dm.share();
+				}
+			}
+		}
+		
+		return new PushResult(next, nNext, pending);
+	}
+	
+	/*
+	 * Adds to the residual of a node. Returns whether it is over the threshold and this
+	 * call queued it.
+	 */
+	private boolean add(int v, double value, int[] outDegree) {
+		double limit = threshold * (outDegree[v] + 1);
+		
+		while (true) {
+			long bits = residuals.get(v);
+			double before = Double.longBitsToDouble(bits);
+			double after = before + value;
+			
+			if (residuals.compareAndSet(v, bits, Double.doubleToRawLongBits(after))) {
+				return after > limit && queued.get(v) == 0 && queued.compareAndSet(v, 0, 1);
+			}
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package org.mmg.pagerank;
+
+import java.io.IOException;
+
+import org.mmg.pagerank.matrix.ExternalPRGraph;
+import org.mmg.pagerank.matrix.ExternalPRGraph.LinkBlockReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Power iteration (same formula as DecayFactorPageRank) for graphs whose links don't fit
+ * in memory. Only the values of the previous and current iterations, the offsets of the
+ * incoming links and the number of outgoing links of each node are kept in memory: the
+ * incoming links are read from the graph file in every iteration (semi-external memory).
+ * <br>
+ * <br>
+ * The links of the file are sorted by destination, so they are read sequentially in
+ * blocks of external.block.size links, and the value of each node is finished as soon as
+ * its last incoming link has been read. With external.prefetch = true, the next block is
+ * read by a background thread while the current one is used, so the disk doesn't wait for
+ * the calculation.
+ * <br>
+ * <br>
+ * The calculation of each block is sequential: the time of an iteration is that of
+ * reading L * 4 bytes from the disk (or the OS page cache).
+ *
+ * @author Manuel Medina González
+ * @see DecayFactorPageRank
+ * @see ExternalPRGraph
+ *
+ */
+public class SemiExternalPageRank {
+	
+	private int maxIterations;
+	private double damping_factor;
+	// Error rate
+	private double epsilon;
+	// Whether iterations and results are shown
+	private boolean verbose = true;
+	// Number of iterations performed by the last calculation
+	private int iterations;
+	private Logger logger = LoggerFactory.getLogger(SemiExternalPageRank.class);
+	
+	public SemiExternalPageRank(int maxIterations, double damping_factor, double epsilon) {
+		this.maxIterations = maxIterations;
+		this.damping_factor = damping_factor;
+		this.epsilon = epsilon;
+	}
+	
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+	
+	public int getIterations() {
+		return iterations;
+	}
+	
+	public void calculatePageRank(ExternalPRGraph prGraph, PRSettings settings) throws IOException {
+		long start = System.currentTimeMillis();
+		int n = prGraph.getNumberOfNodes();
+		int[] offsets = prGraph.getInLinkOffsets();
+		int[] outDegree = prGraph.getOutDegrees();
+		int blockSize = Math.max(1, settings.getExternalBlockSize());
+		double[] previous = prGraph.getPageRanks();
+		double[] current = new double[n];
+		double teleport = (1 - damping_factor) / n;
+		long bytesRead = 0;
+		
+		DanglingMass dm = new DanglingMass(n, settings);
+		
+		if (verbose) {
+			logger.info("Memory used: " + ((prGraph.getMemorySize() + (long)n * 8) >> 20) + " MB for " + n + " URLs, "
+					    + (((long)prGraph.getNumberOfEdges() * 4) >> 20) + " MB of links read per iteration");
+			logger.info("Links per block: " + blockSize + (settings.isExternalPrefetch() ? ", prefetched" : ""));
+		}
+		
+		int cntIterations = 0;
+		double currentError = 1.0;
+		
+		// Main loop
+		while (cntIterations < maxIterations && currentError > epsilon) {
+			long iterationStart = System.currentTimeMillis();
+			double danglingMass = dm.total(previous, prGraph.getDanglingNodes());
+			
+			currentError = 0.0;
+			
+			try(LinkBlockReader links = prGraph.openLinks(blockSize, settings.isExternalPrefetch())) {
+				int[] block = null;
+				// Links of the current block, and position in it
+				int size = 0;
+				int i = 0;
+				
+				for (int v = 0; v < n; v++) {
+					double tempCalc = 0.0;
+					
+					// The incoming links of v are the next ones in the file
+					for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+						if (i == size) {
+							block = links.next();
+							size = links.size();
+							i = 0;
+						}
+						
+						int source = block[i++];
+						tempCalc += previous[source] / outDegree[source];
+					}
+					
+					// Handling dangling nodes = KEEP
+					tempCalc += dm.contribution(danglingMass, previous[v], outDegree[v] == 0);
+					
+					current[v] = damping_factor * tempCalc + teleport;
+					currentError += Math.abs(current[v] - previous[v]);
+				}
+			}
+			
+			bytesRead += (long)prGraph.getNumberOfEdges() * 4;
+			
+			double[] tmp = previous;
+			previous = current;
+			current = tmp;
+			
+			if (verbose) {
+				logger.info(" ========= Iteration " + (cntIterations + 1) + " ========= ");
+				logger.info("Current error rate: " + currentError + ". Time: " + (System.currentTimeMillis() - iterationStart) + " ms"
+						    + System.getProperty("line.separator"));
+			}
+			cntIterations += 1;
+		}
+		
+		// The values are left in the graph
+		if (previous != prGraph.getPageRanks()) {
+			System.arraycopy(previous, 0, prGraph.getPageRanks(), 0, n);
+		}
+		
+		long elapsed = System.currentTimeMillis() - start;
+		iterations = cntIterations;
+		
+		if (verbose) {
+			prGraph.printPageRanks();
+			logger.info(" ===== Execution finished. Total number of iterations performed: " + cntIterations + " ====");
+		}
+		logger.info("Links read: " + (bytesRead >> 20) + " MB in " + elapsed + " ms ("
+				    + (elapsed > 0 ? (bytesRead >> 20) * 1000 / elapsed : 0) + " MB/s)");
+	}
+}
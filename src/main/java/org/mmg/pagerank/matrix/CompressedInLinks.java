@@ -0,0 +1,123 @@
+package org.mmg.pagerank.matrix;
+
+import java.util.Arrays;
+
+/**
+ * The incoming links of a PRGraph, compressed as in WebGraph: the sources of each node
+ * are sorted and stored as gaps, each one as a variable length integer (7 bits per byte,
+ * the highest bit set in all the bytes but the last). When URLs linking to each other
+ * have close ids (same host, see node reordering), most gaps take a single byte instead
+ * of the 4 of an int.
+ * <br>
+ * <br>
+ * The sources of the node v are the bytes data[positions[v]] ... data[positions[v + 1] - 1]:
+ * <br>
+ * <br>
+ * - The first source s(0) as zigzag(s(0) - v): 2 * x if x >= 0, -2 * x - 1 otherwise
+ * <br>
+ * - Each next source s(i) as s(i) - s(i - 1) - 1
+ * <br>
+ * <br>
+ * They are meant to be decoded sequentially, node after node, in the inner loop of a
+ * calculator (see CompressedPageRank).
+ * <br>
+ * <br>
+ * The only way to create an instance of this class is by using
+ * PRGraph.getCompressedInLinks().
+ *
+ * @author Manuel Medina González
+ * @see PRGraph
+ *
+ */
+public class CompressedInLinks {
+	
+	private byte[] data;
+	// Start of the sources of each node in data (N + 1 elements)
+	private int[] positions;
+	private int nLinks;
+	
+	// Package-private constructor to prevent unsafe creation
+	CompressedInLinks(int[] offsets, int[] sources) {
+		int n = offsets.length - 1;
+		// At most 5 bytes per link
+		byte[] buffer = new byte[(int)Math.min((long)sources.length * 5 + 16, Integer.MAX_VALUE - 8)];
+		int[] node = new int[16];
+		int position = 0;
+		
+		positions = new int[n + 1];
+		nLinks = sources.length;
+		
+		for (int v = 0; v < n; v++) {
+			int degree = offsets[v + 1] - offsets[v];
+			if (degree > node.length) {
+				node = new int[Math.max(degree, node.length * 2)];
+			}
+			System.arraycopy(sources, offsets[v], node, 0, degree);
+			Arrays.sort(node, 0, degree);
+			
+			if (buffer.length - position < (long)degree * 5) {
+				long size = Math.max((long)buffer.length * 2, (long)position + (long)degree * 5);
+				if (size > Integer.MAX_VALUE - 8) {
+					throw new IllegalStateException("Too many links to compress in a single array: " + nLinks);
+				}
+				buffer = Arrays.copyOf(buffer, (int)size);
+			}
+			
+			for (int i = 0; i < degree; i++) {
+				int value;
+				if (i == 0) {
+					int x = node[0] - v;
+					value = (x << 1) ^ (x >> 31);
+				}
+				else {
+					value = node[i] - node[i - 1] - 1;
+				}
+				
+				while ((value & ~0x7f) != 0) {
+					buffer[position++] = (byte)((value & 0x7f) | 0x80);
+					value >>>= 7;
+				}
+				buffer[position++] = (byte)value;
+			}
+			
+			positions[v + 1] = position;
+		}
+		
+		data = Arrays.copyOf(buffer, position);
+	}
+	
+	/*
+	 * The following arrays are exposed for the sake of the calculators' inner loops.
+	 * They must not be modified.
+	 */
+	
+	public byte[] getData() {
+		return data;
+	}
+	
+	/**
+	 * @return The start of the sources of each node in the array returned by getData() (N + 1 elements)
+	 */
+	public int[] getPositions() {
+		return positions;
+	}
+	
+	public int getNumberOfLinks() {
+		return nLinks;
+	}
+	
+	/**
+	 * @return The average number of bits per link (32 in the int array of the PRGraph). The
+	 *         positions are not included, as they take the same as the CSR offsets
+	 */
+	public double getBitsPerLink() {
+		return nLinks == 0 ? 0.0 : (double)data.length * 8 / nLinks;
+	}
+	
+	/**
+	 * @return The number of bytes of the compressed links and their positions
+	 */
+	public long getMemorySize() {
+		return data.length + (long)positions.length * 4;
+	}
+}
@@ -0,0 +1,608 @@
+package org.mmg.pagerank.matrix;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the graph file (see PRGraphFile) of a file of links without keeping the links
+ * in memory, so it works for files much larger than the heap.
+ * <br>
+ * <br>
+ * The file is read sequentially in large blocks. The URLs get ids in order of first
+ * appearance, as with LinkFileParser, from a hash table over a URLDictionary.Builder,
+ * which keeps their bytes in large chunks (no object per URL). Each link is packed as
+ * (target id << 32 | source id) into a buffer of a fixed number of links: when it is
+ * full, it is sorted, its duplicates are removed and it is written to a temporary file
+ * (a run).
+ * <br>
+ * <br>
+ * The runs are then merged (k-way merge with a heap of the next link of each run, at most
+ * MAX_MERGE_WAYS runs at once, with more passes if needed), removing the duplicates across
+ * runs. The last merge gives the links sorted by target and source, which are the sources
+ * of the CSR format, and they are written to the graph file while the offsets and the
+ * number of outgoing links of each node are counted. The URLs are written front coded,
+ * as a URLDictionary.
+ * <br>
+ * <br>
+ * The heap needed is that of the buffer of links plus the URLs and two ints per node,
+ * whatever the number of links. The time of each phase and the peak heap used are shown.
+ *
+ * @author Manuel Medina González
+ * @see PRGraphFile
+ * @see LinkFileParser
+ *
+ */
+public class ExternalGraphBuilder {
+	
+	// Bytes read from the file of links at once
+	private static final int READ_SIZE = 1 << 24;
+	// Most runs merged at once
+	private static final int MAX_MERGE_WAYS = 64;
+	// Bytes read from each run at once when merging
+	private static final int MERGE_BUFFER_SIZE = 1 << 20;
+	private static final int BUFFER_SIZE = 1 << 20;
+	
+	private static Logger logger = LoggerFactory.getLogger(ExternalGraphBuilder.class);
+	
+	private String filename;
+	private boolean keepSelfLinks;
+	// Links per run
+	private int runSize;
+	
+	// URL bytes, by id
+	private URLDictionary.Builder urls = new URLDictionary.Builder(1 << 12);
+	private int nURLs;
+	// Open addressing table: id + 1 of the URL, 0 if empty
+	private int[] table = new int[1 << 13];
+	
+	// Links of the current run
+	private long[] links;
+	private int nLinks;
+	private List<File> runs = new ArrayList<File>();
+	private File tempDir;
+	
+	private long nLines;
+	private long nUniqueLinks;
+	private int nMergePasses;
+	// Bytes of the URLs and their hash table before the dictionary is built
+	private long urlsSize;
+	private long start;
+	private long elapsed;
+	
+	/**
+	 * @param filename The name of the file that contains the links
+	 * @param keepSelfLinks Whether the self links are kept (self.links.policy = keep)
+	 * @param runSize The number of links sorted in memory at once
+	 */
+	public ExternalGraphBuilder(String filename, boolean keepSelfLinks, int runSize) {
+		this.filename = filename;
+		this.keepSelfLinks = keepSelfLinks;
+		this.runSize = Math.max(2, runSize);
+	}
+	
+	/**
+	 * Reads the file of links and writes its graph file. The temporary files are created
+	 * in the directory of the graph file.
+	 *
+	 * @param graphFilename The name of the graph file
+	 * @throws IOException If there were problems while reading or writing the files.
+	 */
+	public void write(String graphFilename) throws IOException {
+		begin(graphFilename);
+		try {
+			parse();
+			end(graphFilename);
+		} finally {
+			// Already done by end(), unless the file could not be read
+			deleteRuns();
+		}
+	}
+	
+	/*
+	 * Instead of reading a file of links, the URLs and links can be added by the caller
+	 * (see GraphGenerator): begin(), addURL() and addLink() as many times as needed, and
+	 * end(), which writes the graph file. The filename given to the constructor is only
+	 * used in the messages.
+	 */
+	void begin(String graphFilename) {
+		start = System.currentTimeMillis();
+		tempDir = new File(graphFilename).getAbsoluteFile().getParentFile();
+		links = new long[runSize];
+	}
+	
+	/*
+	 * Returns the id of the URL, the next one if it is new
+	 */
+	int addURL(byte[] buffer, int offset, int length) throws IOException {
+		return intern(buffer, offset, length);
+	}
+	
+	void addLink(int source, int target) throws IOException {
+		if (source == target && !keepSelfLinks) {
+			return;
+		}
+		
+		if (nLinks == links.length) {
+			writeRun();
+		}
+		links[nLinks++] = ((long)target << 32) | source;
+	}
+	
+	void end(String graphFilename) throws IOException {
+		try {
+			writeRun();
+			// Only the URLs and the nodes are needed from now on
+			links = null;
+			long parsed = System.currentTimeMillis();
+			
+			int nRuns = runs.size();
+			while (runs.size() > MAX_MERGE_WAYS) {
+				mergePass();
+			}
+			long merged = System.currentTimeMillis();
+			
+			writeGraph(graphFilename);
+			
+			elapsed = System.currentTimeMillis() - start;
+			
+			// No lines when the links were added by the caller
+			logger.info("Graph of " + filename + " built in " + elapsed + " ms: " + (nLines > 0 ? nLines + " lines, " : "") + nURLs
+					    + " URLs, " + nUniqueLinks + " links");
+			logger.info("Reading and sorting: " + (parsed - start) + " ms (" + nRuns + " runs of up to " + runSize + " links). "
+					    + "Merging: " + (merged - parsed) + " ms (" + nMergePasses + " intermediate passes). Writing: "
+					    + (elapsed - (merged - start)) + " ms");
+			logger.info("Peak heap used: " + (peakHeapUsed() >> 20) + " MB (links buffer: " + (((long)runSize * 8) >> 20)
+					    + " MB, URLs: " + (urlsSize >> 20) + " MB)");
+		} finally {
+			deleteRuns();
+		}
+	}
+	
+	public int getNumberOfNodes() {
+		return nURLs;
+	}
+	
+	public long getNumberOfLinks() {
+		return nUniqueLinks;
+	}
+	
+	public long getNumberOfLines() {
+		return nLines;
+	}
+	
+	public long getElapsed() {
+		return elapsed;
+	}
+	
+	/*
+	 * Reads the file in blocks and parses its lines. A line that doesn't fit in what is
+	 * left of the block is moved to the start of the next one.
+	 */
+	private void parse() throws IOException {
+		byte[] buffer = new byte[READ_SIZE];
+		int size = 0;
+		boolean eof = false;
+		
+		try(InputStream in = new FileInputStream(filename)) {
+			while (true) {
+				while (!eof && size < buffer.length) {
+					int read = in.read(buffer, size, buffer.length - size);
+					if (read == -1) {
+						eof = true;
+					}
+					else {
+						size += read;
+					}
+				}
+				
+				int position = 0;
+				while (position < size) {
+					int lineEnd = position;
+					while (lineEnd < size && buffer[lineEnd] != '\n' && buffer[lineEnd] != '\r') {
+						lineEnd++;
+					}
+					
+					// The rest of the line (or the \n of \r\n) is still in the file
+					if (!eof && (lineEnd == size || (buffer[lineEnd] == '\r' && lineEnd + 1 == size))) {
+						break;
+					}
+					
+					parseLine(buffer, position, lineEnd);
+					nLines++;
+					
+					// \r\n is a single line break
+					position = lineEnd + 1;
+					if (lineEnd < size && buffer[lineEnd] == '\r' && position < size && buffer[position] == '\n') {
+						position++;
+					}
+				}
+				
+				if (eof) {
+					break;
+				}
+				
+				size -= position;
+				System.arraycopy(buffer, position, buffer, 0, size);
+				if (size == buffer.length) {
+					// A line longer than the buffer
+					buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				}
+			}
+		}
+	}
+	
+	/*
+	 * Two URLs separated by spaces. Trailing spaces are allowed, leading ones are not
+	 */
+	private void parseLine(byte[] buffer, int lineStart, int lineEnd) throws IOException {
+		int firstEnd = skip(buffer, lineStart, lineEnd, false);
+		int secondStart = skip(buffer, firstEnd, lineEnd, true);
+		int secondEnd = skip(buffer, secondStart, lineEnd, false);
+		
+		if (firstEnd == lineStart || secondEnd == secondStart || skip(buffer, secondEnd, lineEnd, true) != lineEnd) {
+			logger.error("==> Line " + (nLines + 1) + " does not have the correct format. Please check: "
+					     + new String(buffer, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8));
+			return;
+		}
+		
+		// Ignored self links don't even add the URL
+		if (!keepSelfLinks && firstEnd - lineStart == secondEnd - secondStart
+				&& equal(buffer, lineStart, buffer, secondStart, firstEnd - lineStart)) {
+			return;
+		}
+		
+		int source = intern(buffer, lineStart, firstEnd - lineStart);
+		int target = intern(buffer, secondStart, secondEnd - secondStart);
+		
+		addLink(source, target);
+	}
+	
+	private static int skip(byte[] buffer, int position, int end, boolean spaces) {
+		while (position < end && (buffer[position] == ' ') == spaces) {
+			position++;
+		}
+		
+		return position;
+	}
+	
+	/*
+	 * Returns the id of the URL in the given bytes, creating it if needed
+	 */
+	private int intern(byte[] buffer, int start, int length) {
+		int hash = URLDictionary.Builder.hash(buffer, start, length);
+		int mask = table.length - 1;
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		
+		while (table[slot] != 0) {
+			int u = table[slot] - 1;
+			if (urls.equal(u, buffer, start, length)) {
+				return u;
+			}
+			slot = (slot + 1) & mask;
+		}
+		
+		urls.add(buffer, start, length);
+		table[slot] = nURLs + 1;
+		nURLs++;
+		
+		// Keeps the table at most half full
+		if (2 * nURLs > table.length) {
+			rehash();
+		}
+		
+		return nURLs - 1;
+	}
+	
+	private void rehash() {
+		table = new int[table.length * 2];
+		int mask = table.length - 1;
+		
+		for (int u = 0; u < nURLs; u++) {
+			int hash = urls.hash(u);
+			int slot = (hash ^ (hash >>> 16)) & mask;
+			while (table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = u + 1;
+		}
+	}
+	
+	private static boolean equal(byte[] bytes1, int start1, byte[] bytes2, int start2, int length) {
+		for (int i = 0; i < length; i++) {
+			if (bytes1[start1 + i] != bytes2[start2 + i]) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/*
+	 * Sorts the links of the buffer and writes them without duplicates to a new run
+	 */
+	private void writeRun() throws IOException {
+		if (nLinks == 0) {
+			return;
+		}
+		
+		Arrays.sort(links, 0, nLinks);
+		
+		File run = File.createTempFile("links", ".run", tempDir);
+		run.deleteOnExit();
+		runs.add(run);
+		
+		try(RandomAccessFile file = new RandomAccessFile(run, "rw")) {
+			FileChannel channel = file.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			
+			for (int i = 0; i < nLinks; i++) {
+				if (i == 0 || links[i] != links[i - 1]) {
+					PRGraphFile.ensure(buffer, 8, channel);
+					buffer.putLong(links[i]);
+				}
+			}
+			
+			PRGraphFile.flush(buffer, channel);
+		}
+		
+		nLinks = 0;
+	}
+	
+	/*
+	 * Merges the runs in groups of MAX_MERGE_WAYS, into a run per group
+	 */
+	private void mergePass() throws IOException {
+		List<File> merged = new ArrayList<File>();
+		
+		for (int i = 0; i < runs.size(); i += MAX_MERGE_WAYS) {
+			List<File> group = runs.subList(i, Math.min(runs.size(), i + MAX_MERGE_WAYS));
+			File run = File.createTempFile("links", ".run", tempDir);
+			run.deleteOnExit();
+			merged.add(run);
+			
+			try(RunMerger merger = new RunMerger(group);
+				RandomAccessFile file = new RandomAccessFile(run, "rw")) {
+				FileChannel channel = file.getChannel();
+				ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+				
+				long link;
+				while ((link = merger.next()) != -1) {
+					PRGraphFile.ensure(buffer, 8, channel);
+					buffer.putLong(link);
+				}
+				
+				PRGraphFile.flush(buffer, channel);
+			}
+			
+			for (File done : group) {
+				done.delete();
+			}
+		}
+		
+		runs = merged;
+		nMergePasses++;
+	}
+	
+	/*
+	 * Merges the last runs into the sources of the graph file, then writes the rest of it
+	 */
+	private void writeGraph(String graphFilename) throws IOException {
+		int n = nURLs;
+		int[] offsets = new int[n + 1];
+		int[] outDegree = new int[n];
+		
+		try(RandomAccessFile file = new RandomAccessFile(graphFilename, "rw")) {
+			file.setLength(0);
+			FileChannel channel = file.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			
+			// The sources go after the header and the offsets
+			channel.position(PRGraphFile.HEADER_SIZE + (long)(n + 1) * 4);
+			nUniqueLinks = 0;
+			
+			try(RunMerger merger = new RunMerger(runs)) {
+				long link;
+				while ((link = merger.next()) != -1) {
+					int source = (int)link;
+					
+					offsets[(int)(link >>> 32) + 1]++;
+					outDegree[source]++;
+					nUniqueLinks++;
+					
+					PRGraphFile.ensure(buffer, 4, channel);
+					buffer.putInt(source);
+				}
+			}
+			
+			if (nUniqueLinks > Integer.MAX_VALUE) {
+				throw new IOException("Too many links for a graph file: " + nUniqueLinks);
+			}
+			
+			for (int v = 0; v < n; v++) {
+				offsets[v + 1] += offsets[v];
+			}
+			
+			for (int degree : outDegree) {
+				PRGraphFile.ensure(buffer, 4, channel);
+				buffer.putInt(degree);
+			}
+			
+			// Sorted and front coded, the hash table is no longer needed
+			urlsSize = dictionarySize();
+			table = null;
+			PRGraphFile.putDictionary(buffer, channel, urls.build());
+			urls = null;
+			
+			PRGraphFile.flush(buffer, channel);
+			
+			// Header and offsets, now that they are known
+			channel.position(0);
+			PRGraphFile.putHeader(buffer, keepSelfLinks, n, (int)nUniqueLinks);
+			for (int o : offsets) {
+				PRGraphFile.ensure(buffer, 4, channel);
+				buffer.putInt(o);
+			}
+			
+			PRGraphFile.flush(buffer, channel);
+		}
+	}
+	
+	private void deleteRuns() {
+		for (File run : runs) {
+			run.delete();
+		}
+	}
+	
+	private long dictionarySize() {
+		return urls.getMemorySize() + (long)table.length * 4;
+	}
+	
+	private static long peakHeapUsed() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		
+		return peak;
+	}
+	
+	/**
+	 * Merges sorted runs of links, giving each different link once. The next link of each
+	 * run is kept in a binary heap.
+	 *
+	 * @author Manuel Medina González
+	 *
+	 */
+	private static class RunMerger implements AutoCloseable {
+		
+		private RandomAccessFile[] files;
+		private ByteBuffer[] buffers;
+		private long[] heads;
+		// Runs with links left, ordered by their next link
+		private int[] heap;
+		private int size;
+		private long last = -1;
+		
+		RunMerger(List<File> runs) throws IOException {
+			int k = runs.size();
+			files = new RandomAccessFile[k];
+			buffers = new ByteBuffer[k];
+			heads = new long[k];
+			heap = new int[k];
+			
+			for (int r = 0; r < k; r++) {
+				files[r] = new RandomAccessFile(runs.get(r), "r");
+				buffers[r] = ByteBuffer.allocateDirect(MERGE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+				buffers[r].flip();
+				
+				if (advance(r)) {
+					heap[size] = r;
+					up(size++);
+				}
+			}
+		}
+		
+		/*
+		 * Returns the next different link, or -1 once all the runs are done
+		 */
+		long next() throws IOException {
+			while (size > 0) {
+				int r = heap[0];
+				long link = heads[r];
+				
+				if (advance(r)) {
+					down(0);
+				}
+				else {
+					heap[0] = heap[--size];
+					down(0);
+				}
+				
+				if (link != last) {
+					last = link;
+					return link;
+				}
+			}
+			
+			return -1;
+		}
+		
+		/*
+		 * Reads the next link of a run into heads. Returns false at the end of the run
+		 */
+		private boolean advance(int r) throws IOException {
+			ByteBuffer buffer = buffers[r];
+			
+			if (buffer.remaining() < 8) {
+				buffer.compact();
+				while (buffer.hasRemaining() && files[r].getChannel().read(buffer) > 0) {
+				}
+				buffer.flip();
+				
+				if (buffer.remaining() < 8) {
+					return false;
+				}
+			}
+			
+			heads[r] = buffer.getLong();
+			
+			return true;
+		}
+		
+		private void up(int i) {
+			int r = heap[i];
+			while (i > 0 && heads[heap[(i - 1) / 2]] > heads[r]) {
+				heap[i] = heap[(i - 1) / 2];
+				i = (i - 1) / 2;
+			}
+			heap[i] = r;
+		}
+		
+		private void down(int i) {
+			if (size == 0) {
+				return;
+			}
+			
+			int r = heap[i];
+			while (2 * i + 1 < size) {
+				int child = 2 * i + 1;
+				if (child + 1 < size && heads[heap[child + 1]] < heads[heap[child]]) {
+					child++;
+				}
+				if (heads[heap[child]] >= heads[r]) {
+					break;
+				}
+				heap[i] = heap[child];
+				i = child;
+			}
+			heap[i] = r;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			for (RandomAccessFile file : files) {
+				if (file != null) {
+					file.close();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,318 @@
+package org.mmg.pagerank.matrix;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A graph file (see PRGraphFile) of which only the per node arrays are kept in memory:
+ * the offsets of the incoming links, the number of outgoing links of each node and the
+ * pagerank values. The incoming links, sorted by destination, are read from the file
+ * in blocks each time they are needed (see openLinks), and the URLs are only read to
+ * show or write the results. The memory needed is O(N) instead of O(N + L).
+ * <br>
+ * <br>
+ * The only way to create an instance of this class is by using the
+ * PRMatrixFactory.
+ *
+ * @author Manuel Medina González
+ * @see PRGraphFile
+ * @see PRMatrixFactory
+ *
+ */
+public class ExternalPRGraph {
+	
+	private String filename;
+	private int nLinks;
+	// Incoming links in CSR format, the sources are in the file
+	private int[] offsets;
+	// Number of outgoing links of each node
+	private int[] outDegree;
+	// Ids of the nodes without outgoing links (rank leaks)
+	private int[] danglingNodes;
+	// The pagerank values
+	private double[] pageRanks;
+	// Positions of the sources and the URLs in the file
+	private long sourcesPosition;
+	private long urlsPosition;
+	
+	private Logger logger = LoggerFactory.getLogger(ExternalPRGraph.class);
+	
+	// Package-private constructor to prevent unsafe creation
+	ExternalPRGraph(String filename, int nLinks, int[] offsets, int[] outDegree, long sourcesPosition) {
+		this.filename = filename;
+		this.nLinks = nLinks;
+		this.offsets = offsets;
+		this.outDegree = outDegree;
+		this.sourcesPosition = sourcesPosition;
+		
+		int n = outDegree.length;
+		urlsPosition = sourcesPosition + (long)nLinks * 4 + (long)n * 4;
+		pageRanks = new double[n];
+		
+		int nDangling = 0;
+		for (int v = 0; v < n; v++) {
+			if (outDegree[v] == 0) {
+				nDangling++;
+			}
+		}
+		danglingNodes = new int[nDangling];
+		for (int v = 0, i = 0; v < n; v++) {
+			if (outDegree[v] == 0) {
+				danglingNodes[i++] = v;
+			}
+		}
+	}
+	
+	public String getFilename() {
+		return filename;
+	}
+	
+	public int getNumberOfNodes() {
+		return outDegree.length;
+	}
+	
+	public int getNumberOfEdges() {
+		return nLinks;
+	}
+	
+	public int[] getInLinkOffsets() {
+		return offsets;
+	}
+	
+	public int[] getOutDegrees() {
+		return outDegree;
+	}
+	
+	public int[] getDanglingNodes() {
+		return danglingNodes;
+	}
+	
+	public double[] getPageRanks() {
+		return pageRanks;
+	}
+	
+	/**
+	 * @return The number of bytes of the arrays kept in memory
+	 */
+	public long getMemorySize() {
+		return (long)offsets.length * 4 + (long)outDegree.length * 4 + (long)danglingNodes.length * 4 + (long)pageRanks.length * 8;
+	}
+	
+	/**
+	 * Opens the incoming links of the file for a sequential read. They come in the order of
+	 * their destination, as sources[offsets[0]] ... sources[L - 1] of a PRGraph.
+	 *
+	 * @param blockSize The number of links read at once
+	 * @param prefetch Whether the next block is read by a background thread while the current one is used
+	 * @return A reader of the links, to be closed once done
+	 * @throws IOException If there were problems while opening the file.
+	 */
+	public LinkBlockReader openLinks(int blockSize, boolean prefetch) throws IOException {
+		return new LinkBlockReader(filename, sourcesPosition, nLinks, Math.max(1, blockSize), prefetch);
+	}
+	
+	/**
+	 * Shows the pagerank values, reading the URLs from the file
+	 */
+	public void printPageRanks() throws IOException {
+		logger.info(" ==> Current pageranks: ");
+		
+		URLDictionary urls = readURLs();
+		for (int v = 0; v < pageRanks.length; v++) {
+			logger.info(urls.getURL(v) + " => " + pageRanks[v]);
+		}
+	}
+	
+	/**
+	 * Writes a line "URL pagerank" per node to the given file, reading the URLs from the
+	 * graph file. It can be read by PRMatrixFactory.loadPageRanks as the file of a PRGraph.
+	 */
+	public void savePageRanks(String filename) throws IOException {
+		URLDictionary urls = readURLs();
+		
+		try(BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename), StandardCharsets.UTF_8))) {
+			for (int v = 0; v < pageRanks.length; v++) {
+				bw.write(urls.getURL(v) + " " + pageRanks[v]);
+				bw.newLine();
+			}
+		}
+	}
+	
+	/*
+	 * Reads the URLs of the file, front coded as they are stored (see URLDictionary). Only
+	 * kept while the results are shown or written
+	 */
+	private URLDictionary readURLs() throws IOException {
+		try(RandomAccessFile file = new RandomAccessFile(filename, "r")) {
+			return PRGraphFile.readDictionary(file.getChannel(), urlsPosition, outDegree.length);
+		}
+	}
+	
+	/**
+	 * Sequential reader of the incoming links of a graph file, one block at a time:
+	 * <br>
+	 * <br>
+	 * while ((block = reader.next()) != null) { use block[0] ... block[reader.size() - 1] }
+	 * <br>
+	 * <br>
+	 * The block returned is only valid until the next call. With prefetching, two blocks
+	 * are used in turns: a background thread fills one while the caller uses the other,
+	 * so the disk keeps reading while the links are processed.
+	 *
+	 * @author Manuel Medina González
+	 *
+	 */
+	public static class LinkBlockReader implements Closeable {
+		
+		private RandomAccessFile file;
+		private FileChannel channel;
+		private ByteBuffer buffer;
+		private long position;
+		// Links left to read from the file
+		private long remaining;
+		private int[] block;
+		private int size;
+		// Only with prefetching
+		private Thread prefetcher;
+		private BlockingQueue<int[]> free;
+		// Blocks read, ended by an empty one
+		private BlockingQueue<int[]> ready;
+		// Sizes of the blocks in ready, in the same order
+		private BlockingQueue<Integer> sizes;
+		private volatile IOException error;
+		private boolean finished;
+		
+		LinkBlockReader(String filename, long position, int nLinks, int blockSize, boolean prefetch) throws IOException {
+			file = new RandomAccessFile(filename, "r");
+			channel = file.getChannel();
+			buffer = ByteBuffer.allocateDirect(blockSize * 4).order(ByteOrder.LITTLE_ENDIAN);
+			this.position = position;
+			remaining = nLinks;
+			
+			if (!prefetch) {
+				block = new int[blockSize];
+				return;
+			}
+			
+			free = new ArrayBlockingQueue<int[]>(2);
+			ready = new ArrayBlockingQueue<int[]>(3);
+			sizes = new ArrayBlockingQueue<Integer>(3);
+			free.add(new int[blockSize]);
+			free.add(new int[blockSize]);
+			
+			prefetcher = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						try {
+							while (remaining > 0) {
+								int[] values = free.take();
+								sizes.put(fill(values));
+								ready.put(values);
+							}
+						} catch (IOException e) {
+							error = e;
+						}
+						
+						sizes.put(0);
+						ready.put(new int[0]);
+					} catch (InterruptedException e) {
+						// Closed before the end
+					}
+				}
+			}, "link-prefetcher");
+			prefetcher.setDaemon(true);
+			prefetcher.start();
+		}
+		
+		/**
+		 * @return The next block of links, or null at the end of the links
+		 * @throws IOException If there were problems while reading the file.
+		 */
+		public int[] next() throws IOException {
+			if (prefetcher == null) {
+				size = fill(block);
+				
+				return size > 0 ? block : null;
+			}
+			
+			if (finished) {
+				return null;
+			}
+			
+			// The previous block can be filled again
+			if (block != null) {
+				free.add(block);
+			}
+			
+			try {
+				size = sizes.take();
+				block = ready.take();
+			} catch (InterruptedException e) {
+				throw new IOException("Interrupted while reading the links", e);
+			}
+			
+			if (size == 0) {
+				finished = true;
+				block = null;
+				
+				if (error != null) {
+					throw error;
+				}
+			}
+			
+			return block;
+		}
+		
+		/**
+		 * @return The number of links of the block returned by next()
+		 */
+		public int size() {
+			return size;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			if (prefetcher != null) {
+				prefetcher.interrupt();
+			}
+			file.close();
+		}
+		
+		/*
+		 * Reads the next links of the file into the array with a single large read.
+		 * Returns the number of links read, 0 at the end
+		 */
+		private int fill(int[] values) throws IOException {
+			int count = (int)Math.min(values.length, remaining);
+			
+			buffer.clear();
+			buffer.limit(count * 4);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, position + buffer.position()) < 0) {
+					throw new IOException("Unexpected end of the graph file");
+				}
+			}
+			
+			buffer.flip();
+			buffer.asIntBuffer().get(values, 0, count);
+			position += (long)count * 4;
+			remaining -= count;
+			
+			return count;
+		}
+	}
+}
@@ -0,0 +1,532 @@
+package org.mmg.pagerank.matrix;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes synthetic web graphs of any size, to test the program at scale: either a file of
+ * links (a line "URLA URLB" per link) or a graph file (see PRGraphFile), without keeping
+ * the links in memory. The URLs are made up from their ids, HOST_SIZE URLs per host.
+ * <br>
+ * <br>
+ * Models:
+ * <br>
+ * - uniform: The links of each URL go to URLs chosen at random (Erdős–Rényi).
+ * <br>
+ * - rmat: Each link is placed in the adjacency matrix by choosing one of its quadrants
+ * with probabilities a, b, c and d (those of Graph500), recursively (R-MAT, a Kronecker
+ * graph). The number of links per URL follows a power law, in both directions.
+ * <br>
+ * - preferential: The links of each URL go to URLs chosen with a probability proportional
+ * to their number of incoming links so far plus one (preferential attachment), so a few
+ * URLs get most of the links, as in the web.
+ * <br>
+ * <br>
+ * On top of the model:
+ * <br>
+ * - A fraction of the URLs has no outgoing links (dangling nodes). Which ones depends on
+ * the seed only. If every URL is dangling, no links are generated.
+ * <br>
+ * - Each link is a self link with the given rate, and the model never draws one otherwise.
+ * <br>
+ * - The last URLs form sink components of the given size: each one is a cycle plus links
+ * between its own URLs only, so it is strongly connected and keeps the pagerank it gets.
+ * <br>
+ * <br>
+ * The random numbers come from the seed alone (SplitMix64), so the same parameters always
+ * give the same graph. The links are written as they are generated: the memory needed is
+ * that of the URLs (and their weights for the preferential model), whatever the number
+ * of links. A graph file is written through ExternalGraphBuilder, with its external sort.
+ *
+ * @author Manuel Medina González
+ * @see ExternalGraphBuilder
+ *
+ */
+public class GraphGenerator {
+	
+	public static final String UNIFORM = "uniform";
+	public static final String RMAT = "rmat";
+	public static final String PREFERENTIAL = "preferential";
+	
+	// R-MAT probabilities of the quadrants (Graph500), d = 1 - a - b - c
+	private static final double RMAT_A = 0.57;
+	private static final double RMAT_B = 0.19;
+	private static final double RMAT_C = 0.19;
+	// URLs per host
+	private static final int HOST_SIZE = 64;
+	// Draws of a target other than the source before the link is given up, and of an
+	// R-MAT source that is not dangling before the next one is taken
+	private static final int MAX_TRIES = 64;
+	// Links between progress messages
+	private static final long PROGRESS = 1L << 27;
+	private static final int BUFFER_SIZE = 1 << 20;
+	// Longest URL made up by url()
+	private static final int MAX_URL_LENGTH = 64;
+	private static final byte[] URL_PREFIX = "http://www".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] URL_HOST = ".example.com/page".getBytes(StandardCharsets.UTF_8);
+	
+	private static Logger logger = LoggerFactory.getLogger(GraphGenerator.class);
+	
+	private String model;
+	private int nURLs;
+	private long nLinks;
+	private long seed;
+	private double danglingFraction;
+	private double selfLinkRate;
+	private int nSinks;
+	private int sinkSize = 2;
+	
+	// Random state
+	private long state;
+	// First URL of the sink components
+	private int firstSinkURL;
+	private long nGenerated;
+	private long elapsed;
+	
+	/**
+	 * @param model uniform, rmat or preferential
+	 * @param nURLs The number of URLs
+	 * @param nLinks The number of links generated (the duplicates are removed when the graph is built)
+	 * @param seed The seed of the random numbers
+	 */
+	public GraphGenerator(String model, int nURLs, long nLinks, long seed) {
+		if (!model.equals(UNIFORM) && !model.equals(RMAT) && !model.equals(PREFERENTIAL)) {
+			throw new IllegalArgumentException("Unknown graph model: " + model);
+		}
+		if (nURLs < 1 || nLinks < 0) {
+			throw new IllegalArgumentException("Invalid number of URLs or links: " + nURLs + ", " + nLinks);
+		}
+		
+		this.model = model;
+		this.nURLs = nURLs;
+		this.nLinks = nLinks;
+		this.seed = seed;
+	}
+	
+	/**
+	 * @param danglingFraction The fraction of the URLs without outgoing links, in [0, 1)
+	 */
+	public void setDanglingFraction(double danglingFraction) {
+		if (danglingFraction < 0 || danglingFraction >= 1) {
+			throw new IllegalArgumentException("The fraction of dangling nodes must be in [0, 1): " + danglingFraction);
+		}
+		
+		this.danglingFraction = danglingFraction;
+	}
+	
+	/**
+	 * @param selfLinkRate The probability of a link being a self link, in [0, 1]
+	 */
+	public void setSelfLinkRate(double selfLinkRate) {
+		if (selfLinkRate < 0 || selfLinkRate > 1) {
+			throw new IllegalArgumentException("The rate of self links must be in [0, 1]: " + selfLinkRate);
+		}
+		
+		this.selfLinkRate = selfLinkRate;
+	}
+	
+	/**
+	 * @param nSinks The number of sink components
+	 * @param sinkSize The number of URLs of each sink component, at least 2
+	 */
+	public void setSinkComponents(int nSinks, int sinkSize) {
+		if (nSinks < 0 || sinkSize < 2 || (long)nSinks * sinkSize > nURLs) {
+			throw new IllegalArgumentException("Invalid sink components: " + nSinks + " of " + sinkSize + " URLs");
+		}
+		
+		this.nSinks = nSinks;
+		this.sinkSize = sinkSize;
+	}
+	
+	/**
+	 * Writes a line "URLA URLB" per link to the given file.
+	 *
+	 * @throws IOException If there were problems while writing the file.
+	 */
+	public void writeLinks(String filename) throws IOException {
+		try(TextOutput output = new TextOutput(new FileOutputStream(filename))) {
+			generate(output);
+		}
+		
+		logger.info("Links written to " + filename + ": " + nGenerated + " links in " + elapsed + " ms");
+	}
+	
+	/**
+	 * Writes the graph file of the links, as the convert mode does with a file of links.
+	 *
+	 * @param filename The name of the graph file
+	 * @param keepSelfLinks Whether the self links are kept (self.links.policy = keep)
+	 * @param runSize The number of links sorted in memory at once (see ExternalGraphBuilder)
+	 * @throws IOException If there were problems while writing the files.
+	 */
+	public void writeGraph(String filename, final boolean keepSelfLinks, int runSize) throws IOException {
+		final ExternalGraphBuilder builder = new ExternalGraphBuilder(model + " graph", keepSelfLinks, runSize);
+		final byte[] url = new byte[MAX_URL_LENGTH];
+		// Id of each URL in the graph file, -1 until it appears
+		final int[] ids = new int[nURLs];
+		Arrays.fill(ids, -1);
+		
+		builder.begin(filename);
+		// The URLs are added as they appear, so the graph file is the same as the one
+		// converted from the file of links
+		generate(new LinkOutput() {
+			@Override
+			public void link(int source, int target) throws IOException {
+				if (source == target && !keepSelfLinks) {
+					return;
+				}
+				
+				builder.addLink(id(source), id(target));
+			}
+			
+			private int id(int v) throws IOException {
+				if (ids[v] < 0) {
+					ids[v] = builder.addURL(url, 0, putURL(url, 0, v));
+				}
+				
+				return ids[v];
+			}
+		});
+		logger.info("Links generated: " + nGenerated + " in " + elapsed + " ms");
+		
+		builder.end(filename);
+	}
+	
+	public long getNumberOfLinks() {
+		return nGenerated;
+	}
+	
+	public long getElapsed() {
+		return elapsed;
+	}
+	
+	/**
+	 * @return The URL of the given id
+	 */
+	public static String url(int v) {
+		return "http://www" + (v / HOST_SIZE) + ".example.com/page" + v;
+	}
+	
+	/*
+	 * Writes url(v) to the buffer, without creating a String. Returns the position after it
+	 */
+	private static int putURL(byte[] buffer, int position, int v) {
+		System.arraycopy(URL_PREFIX, 0, buffer, position, URL_PREFIX.length);
+		position = putNumber(buffer, position + URL_PREFIX.length, v / HOST_SIZE);
+		System.arraycopy(URL_HOST, 0, buffer, position, URL_HOST.length);
+		
+		return putNumber(buffer, position + URL_HOST.length, v);
+	}
+	
+	private static int putNumber(byte[] buffer, int position, int value) {
+		int digits = 1;
+		for (int rest = value / 10; rest > 0; rest /= 10) {
+			digits++;
+		}
+		
+		for (int i = position + digits - 1; i >= position; i--) {
+			buffer[i] = (byte)('0' + value % 10);
+			value /= 10;
+		}
+		
+		return position + digits;
+	}
+	
+	private void generate(LinkOutput output) throws IOException {
+		long start = System.currentTimeMillis();
+		state = seed;
+		firstSinkURL = nURLs - nSinks * sinkSize;
+		nGenerated = 0;
+		
+		// Each sink component is a cycle, so it is strongly connected
+		for (int v = firstSinkURL; v < nURLs; v++) {
+			int first = v - (v - firstSinkURL) % sinkSize;
+			link(output, v, v + 1 < first + sinkSize ? v + 1 : first);
+		}
+		
+		long count = Math.max(0, nLinks - nGenerated);
+		if (model.equals(RMAT)) {
+			generateRMAT(output, count);
+		}
+		else {
+			generateByURL(output, count);
+		}
+		
+		elapsed = System.currentTimeMillis() - start;
+	}
+	
+	/*
+	 * O(L log N)
+	 *
+	 * The links of the URLs that are not dangling, one URL after the other. The targets of
+	 * the preferential model are drawn with a Fenwick tree of the weights of the URLs.
+	 */
+	private void generateByURL(LinkOutput output, long count) throws IOException {
+		boolean preferential = model.equals(PREFERENTIAL);
+		long[] tree = null;
+		long total = nURLs;
+		int nSources = 0;
+		
+		for (int v = 0; v < nURLs; v++) {
+			if (!isDangling(v)) {
+				nSources++;
+			}
+		}
+		
+		if (preferential) {
+			// Every URL starts with a weight of 1
+			tree = new long[nURLs + 1];
+			for (int i = 1; i <= nURLs; i++) {
+				tree[i]++;
+				int parent = i + (i & -i);
+				if (parent <= nURLs) {
+					tree[parent] += tree[i];
+				}
+			}
+		}
+		
+		// The links are spread evenly among the sources
+		long perSource = count / Math.max(1, nSources);
+		long extra = count % Math.max(1, nSources);
+		int i = 0;
+		
+		for (int v = 0; v < nURLs; v++) {
+			if (isDangling(v)) {
+				continue;
+			}
+			
+			long degree = perSource + (i++ < extra ? 1 : 0);
+			for (long e = 0; e < degree; e++) {
+				int target = v;
+				
+				if (isSelfLink()) {
+					target = v;
+				}
+				else if (v >= firstSinkURL) {
+					target = sinkTarget(v);
+				}
+				else {
+					for (int tries = 0; tries < MAX_TRIES && target == v; tries++) {
+						target = preferential ? find(tree, nextLong(total)) : nextInt(nURLs);
+					}
+					// Only with a single URL
+					if (target == v) {
+						continue;
+					}
+				}
+				
+				if (preferential) {
+					for (int j = target + 1; j <= nURLs; j += j & -j) {
+						tree[j]++;
+					}
+					total++;
+				}
+				
+				link(output, v, target);
+			}
+		}
+	}
+	
+	/*
+	 * O(L log N)
+	 *
+	 * Links drawn in the 2^scale x 2^scale adjacency matrix, those out of the N x N one or
+	 * from a dangling URL are drawn again. After MAX_TRIES dangling sources in a row, the
+	 * next URL that is not dangling is the source, so a high fraction of dangling URLs
+	 * doesn't stall the generator.
+	 */
+	private void generateRMAT(LinkOutput output, long count) throws IOException {
+		int scale = 32 - Integer.numberOfLeadingZeros(nURLs - 1);
+		long generated = 0;
+		int nSources = 0;
+		int nDanglingDrawn = 0;
+		
+		for (int v = 0; v < nURLs; v++) {
+			if (!isDangling(v)) {
+				nSources++;
+			}
+		}
+		
+		// Every URL is dangling
+		if (nSources == 0) {
+			return;
+		}
+		
+		while (generated < count) {
+			int source = 0;
+			int target = 0;
+			
+			for (int bit = scale - 1; bit >= 0; bit--) {
+				double r = nextDouble();
+				if (r >= RMAT_A + RMAT_B + RMAT_C) {
+					source |= 1 << bit;
+					target |= 1 << bit;
+				}
+				else if (r >= RMAT_A + RMAT_B) {
+					source |= 1 << bit;
+				}
+				else if (r >= RMAT_A) {
+					target |= 1 << bit;
+				}
+			}
+			
+			if (source >= nURLs || target >= nURLs) {
+				continue;
+			}
+			if (isDangling(source)) {
+				if (++nDanglingDrawn < MAX_TRIES) {
+					continue;
+				}
+				do {
+					source = source + 1 < nURLs ? source + 1 : 0;
+				} while (isDangling(source));
+			}
+			nDanglingDrawn = 0;
+			
+			if (isSelfLink()) {
+				target = source;
+			}
+			else if (source >= firstSinkURL) {
+				target = sinkTarget(source);
+			}
+			else if (target == source) {
+				// Only with a single URL
+				if (nURLs == 1) {
+					return;
+				}
+				continue;
+			}
+			
+			link(output, source, target);
+			generated++;
+		}
+	}
+	
+	private void link(LinkOutput output, int source, int target) throws IOException {
+		output.link(source, target);
+		
+		if (++nGenerated % PROGRESS == 0) {
+			logger.info("Links generated: " + nGenerated + " of " + nLinks);
+		}
+	}
+	
+	/*
+	 * Whether the URL has no outgoing links. Depends on the seed and the URL only, so it is
+	 * the same for every model. The URLs of the sink components are never dangling
+	 */
+	private boolean isDangling(int v) {
+		if (danglingFraction == 0 || v >= firstSinkURL) {
+			return false;
+		}
+		
+		return (mix(seed ^ (v * 0x9E3779B97F4A7C15L)) >>> 11) * 0x1.0p-53 < danglingFraction;
+	}
+	
+	private boolean isSelfLink() {
+		return selfLinkRate > 0 && nextDouble() < selfLinkRate;
+	}
+	
+	/*
+	 * A URL of the sink component of v other than v
+	 */
+	private int sinkTarget(int v) {
+		int first = v - (v - firstSinkURL) % sinkSize;
+		int target = first + nextInt(sinkSize - 1);
+		
+		return target >= v ? target + 1 : target;
+	}
+	
+	/*
+	 * The URL whose range of weights contains the given value (Fenwick tree search)
+	 */
+	private static int find(long[] tree, long value) {
+		int position = 0;
+		
+		for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+			if (position + step < tree.length && tree[position + step] <= value) {
+				position += step;
+				value -= tree[position];
+			}
+		}
+		
+		return position;
+	}
+	
+	/*
+	 * SplitMix64
+	 */
+	private long next() {
+		state += 0x9E3779B97F4A7C15L;
+		
+		return mix(state);
+	}
+	
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		
+		return z ^ (z >>> 31);
+	}
+	
+	private double nextDouble() {
+		return (next() >>> 11) * 0x1.0p-53;
+	}
+	
+	private int nextInt(int bound) {
+		return (int)((next() >>> 1) % bound);
+	}
+	
+	private long nextLong(long bound) {
+		return (next() >>> 1) % bound;
+	}
+	
+	/*
+	 * Where the links go
+	 */
+	private interface LinkOutput {
+		void link(int source, int target) throws IOException;
+	}
+	
+	/*
+	 * A line "URLA URLB" per link
+	 */
+	private static class TextOutput implements LinkOutput, Closeable {
+		
+		private OutputStream out;
+		private byte[] buffer = new byte[BUFFER_SIZE];
+		private int size;
+		
+		TextOutput(OutputStream out) {
+			this.out = out;
+		}
+		
+		@Override
+		public void link(int source, int target) throws IOException {
+			if (size + 2 * MAX_URL_LENGTH + 2 > buffer.length) {
+				out.write(buffer, 0, size);
+				size = 0;
+			}
+			
+			size = putURL(buffer, size, source);
+			buffer[size++] = ' ';
+			size = putURL(buffer, size, target);
+			buffer[size++] = '\n';
+		}
+		
+		@Override
+		public void close() throws IOException {
+			try {
+				out.write(buffer, 0, size);
+			} finally {
+				out.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,444 @@
+package org.mmg.pagerank.matrix;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parses a file of links ("URLA URLB" per line) on all the cores, without creating
+ * objects per line.
+ * <br>
+ * <br>
+ * The file is split into byte ranges that start after a line break. Each range is
+ * mapped into memory (FileChannel.map) and scanned byte by byte by a task, which gives
+ * its own ids to the URLs it finds with an open addressing table over the bytes of the
+ * range: a String is only created for the first occurrence of a URL in a range. Each task
+ * keeps its links as pairs of its own ids.
+ * <br>
+ * <br>
+ * The ranges are then merged in order, so the URLs get the same ids as when the file is
+ * read line by line (in order of first appearance), and the malformed lines are reported
+ * with their line numbers. The URLs are still compared by their bytes when merging, so
+ * no map of Strings is built (see PRGraph). A line is well formed if it has two URLs separated by one or
+ * more spaces, without leading spaces, as in PRMatrixFactory.parseLine.
+ * <br>
+ * <br>
+ * Ignored self links (self.links.policy = ignore) don't add the URL.
+ *
+ * @author Manuel Medina González
+ * @see PRMatrixFactory
+ *
+ */
+public class LinkFileParser {
+	
+	// Largest range parsed by a task
+	private static final long MAX_RANGE_SIZE = 1 << 28;
+	// Ranges per thread, so that a slow range doesn't leave the other threads idle
+	private static final int RANGES_PER_THREAD = 4;
+	
+	private static Logger logger = LoggerFactory.getLogger(LinkFileParser.class);
+	
+	private String filename;
+	private boolean keepSelfLinks;
+	private int nThreads;
+	
+	private URLDictionary urls;
+	// Each link is packed as (target id << 32 | source id)
+	private long[] links;
+	private int nLinks;
+	private long nLines;
+	private long nBytes;
+	private long elapsed;
+	
+	public LinkFileParser(String filename, boolean keepSelfLinks, int nThreads) {
+		this.filename = filename;
+		this.keepSelfLinks = keepSelfLinks;
+		this.nThreads = nThreads;
+	}
+	
+	/**
+	 * Parses the file. Must be called before the getters.
+	 *
+	 * @throws IOException If the file does not exist of if there were problems while reading it.
+	 */
+	public void run() throws IOException {
+		long start = System.currentTimeMillis();
+		
+		try(RandomAccessFile file = new RandomAccessFile(filename, "r")) {
+			FileChannel channel = file.getChannel();
+			nBytes = channel.size();
+			
+			long[] bounds = split(channel);
+			RangeTask[] tasks = new RangeTask[bounds.length - 1];
+			ForkJoinPool pool = new ForkJoinPool(nThreads);
+			
+			for (int r = 0; r < tasks.length; r++) {
+				tasks[r] = new RangeTask(channel.map(FileChannel.MapMode.READ_ONLY, bounds[r], bounds[r + 1] - bounds[r]));
+				pool.execute(tasks[r]);
+			}
+			
+			for (RangeTask task : tasks) {
+				task.join();
+			}
+			
+			pool.shutdown();
+			
+			merge(tasks);
+		}
+		
+		elapsed = System.currentTimeMillis() - start;
+		
+		double seconds = Math.max(elapsed, 1) / 1000.0;
+		logger.info("Parsed " + filename + ": " + nLines + " lines, " + nBytes + " bytes in " + elapsed + " ms ("
+				    + String.format("%.1f", nBytes / seconds / (1 << 20)) + " MB/s, " + Math.round(nLines / seconds) + " lines/s)");
+	}
+	
+	/**
+	 * @return The URLs found, by id
+	 */
+	public URLDictionary getURLs() {
+		return urls;
+	}
+	
+	/**
+	 * @return The links found (target id << 32 | source id), the first getNumberOfLinks() positions used
+	 */
+	public long[] getLinks() {
+		return links;
+	}
+	
+	public int getNumberOfLinks() {
+		return nLinks;
+	}
+	
+	public long getNumberOfLines() {
+		return nLines;
+	}
+	
+	public long getElapsed() {
+		return elapsed;
+	}
+	
+	/*
+	 * Splits the file into ranges that start after a line break.
+	 * Returns the start of each range plus the size of the file.
+	 */
+	private long[] split(FileChannel channel) throws IOException {
+		long size = channel.size();
+		long rangeSize = Math.max(1, Math.min(MAX_RANGE_SIZE, size / ((long)nThreads * RANGES_PER_THREAD) + 1));
+		long[] bounds = new long[(int)(size / rangeSize) + 2];
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		int nBounds = 1;
+		
+		while (bounds[nBounds - 1] + rangeSize < size) {
+			long position = bounds[nBounds - 1] + rangeSize;
+			
+			// Moves to the byte after the next line break
+			boolean found = false;
+			while (!found && position < size) {
+				buffer.clear();
+				int read = channel.read(buffer, position);
+				for (int i = 0; i < read && !found; i++) {
+					position++;
+					found = buffer.get(i) == '\n';
+				}
+			}
+			
+			if (position >= size) {
+				break;
+			}
+			bounds[nBounds++] = position;
+		}
+		
+		bounds[nBounds++] = size;
+		
+		return Arrays.copyOf(bounds, nBounds);
+	}
+	
+	/*
+	 * Gives global ids to the URLs of each range in order, and translates the links.
+	 * The URLs of the ranges are compared by their bytes, as in the ranges, so a String
+	 * is only created once per URL.
+	 */
+	private void merge(RangeTask[] tasks) {
+		int total = 0;
+		int maxURLs = 0;
+		for (RangeTask task : tasks) {
+			total += task.nPairs;
+			maxURLs += task.nURLs;
+		}
+		links = new long[Math.max(1, total)];
+		nLinks = 0;
+		nLines = 0;
+		
+		// Open addressing table: global id + 1 of the URL, 0 if empty
+		int[] table = new int[Integer.highestOneBit(Math.max(1, maxURLs)) << 2];
+		int mask = table.length - 1;
+		// Range and local id where each URL was found first
+		int[] firstTask = new int[maxURLs];
+		int[] firstLocal = new int[maxURLs];
+		URLDictionary.Builder found = new URLDictionary.Builder(maxURLs);
+		int nURLs = 0;
+		
+		for (int r = 0; r < tasks.length; r++) {
+			RangeTask task = tasks[r];
+			int[] global = new int[task.nURLs];
+			
+			for (int u = 0; u < task.nURLs; u++) {
+				int hash = task.urlHash[u];
+				int slot = (hash ^ (hash >>> 16)) & mask;
+				int id = -1;
+				
+				while (table[slot] != 0) {
+					int g = table[slot] - 1;
+					RangeTask other = tasks[firstTask[g]];
+					if (other.urlHash[firstLocal[g]] == hash && task.equal(u, other, firstLocal[g])) {
+						id = g;
+						break;
+					}
+					slot = (slot + 1) & mask;
+				}
+				
+				if (id == -1) {
+					id = nURLs++;
+					table[slot] = id + 1;
+					firstTask[id] = r;
+					firstLocal[id] = u;
+					found.add(task.bytes(u));
+				}
+				global[u] = id;
+			}
+			
+			for (int i = 0; i < task.nPairs; i++) {
+				links[nLinks++] = ((long)global[task.pairs[2 * i + 1]] << 32) | global[task.pairs[2 * i]];
+			}
+			
+			for (int i = 0; i < task.nMalformed; i++) {
+				logger.error("==> Line " + (nLines + task.malformed[3 * i] + 1) + " does not have the correct format. Please check: "
+						     + task.text(task.malformed[3 * i + 1], task.malformed[3 * i + 2]));
+			}
+			
+			nLines += task.nLines;
+		}
+		
+		urls = found.build();
+	}
+	
+	/**
+	 * Scans the lines of a range of the file. The URLs get ids local to the range,
+	 * in order of first appearance.
+	 *
+	 * @author Manuel Medina González
+	 *
+	 */
+	private class RangeTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private MappedByteBuffer buffer;
+		
+		// Open addressing table: local id + 1 of the URL, 0 if empty
+		private int[] table = new int[1 << 12];
+		// Position, length and hash of the first occurrence of each URL
+		private int[] urlStart = new int[1 << 11];
+		private int[] urlLength = new int[1 << 11];
+		private int[] urlHash = new int[1 << 11];
+		private int nURLs;
+		
+		// Source and target local ids of each link
+		private int[] pairs = new int[1 << 12];
+		private int nPairs;
+		
+		// Line number in the range, start and end of each malformed line
+		private int[] malformed = new int[3 * 16];
+		private int nMalformed;
+		private int nLines;
+		
+		public RangeTask(MappedByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+		
+		@Override
+		protected void compute() {
+			int size = buffer.limit();
+			int position = 0;
+			
+			while (position < size) {
+				int lineStart = position;
+				int lineEnd = position;
+				
+				while (lineEnd < size && buffer.get(lineEnd) != '\n' && buffer.get(lineEnd) != '\r') {
+					lineEnd++;
+				}
+				
+				parseLine(lineStart, lineEnd);
+				nLines++;
+				
+				// \r\n is a single line break
+				position = lineEnd + 1;
+				if (lineEnd < size && buffer.get(lineEnd) == '\r' && position < size && buffer.get(position) == '\n') {
+					position++;
+				}
+			}
+		}
+		
+		/*
+		 * Two URLs separated by spaces. Trailing spaces are allowed, leading ones are not
+		 */
+		private void parseLine(int lineStart, int lineEnd) {
+			int firstStart = lineStart;
+			int firstEnd = skip(firstStart, lineEnd, false);
+			int secondStart = skip(firstEnd, lineEnd, true);
+			int secondEnd = skip(secondStart, lineEnd, false);
+			
+			if (firstEnd == firstStart || secondEnd == secondStart || skip(secondEnd, lineEnd, true) != lineEnd) {
+				if (3 * nMalformed == malformed.length) {
+					malformed = Arrays.copyOf(malformed, malformed.length * 2);
+				}
+				malformed[3 * nMalformed] = nLines;
+				malformed[3 * nMalformed + 1] = lineStart;
+				malformed[3 * nMalformed + 2] = lineEnd;
+				nMalformed++;
+				
+				return;
+			}
+			
+			// Ignored self links don't even add the URL
+			if (!keepSelfLinks && equal(firstStart, secondStart, firstEnd - firstStart, secondEnd - secondStart)) {
+				return;
+			}
+			
+			int source = intern(firstStart, firstEnd - firstStart);
+			int target = intern(secondStart, secondEnd - secondStart);
+			
+			if (2 * nPairs == pairs.length) {
+				pairs = Arrays.copyOf(pairs, pairs.length * 2);
+			}
+			pairs[2 * nPairs] = source;
+			pairs[2 * nPairs + 1] = target;
+			nPairs++;
+		}
+		
+		/*
+		 * Returns the position of the first byte from the given one that is (or is not) a space
+		 */
+		private int skip(int position, int end, boolean spaces) {
+			while (position < end && (buffer.get(position) == ' ') == spaces) {
+				position++;
+			}
+			
+			return position;
+		}
+		
+		/*
+		 * Returns the local id of the URL in the given bytes, creating it if needed
+		 */
+		private int intern(int start, int length) {
+			int hash = 0;
+			for (int i = start; i < start + length; i++) {
+				hash = 31 * hash + buffer.get(i);
+			}
+			
+			int mask = table.length - 1;
+			int slot = (hash ^ (hash >>> 16)) & mask;
+			
+			while (table[slot] != 0) {
+				int u = table[slot] - 1;
+				if (equal(urlStart[u], start, urlLength[u], length)) {
+					return u;
+				}
+				slot = (slot + 1) & mask;
+			}
+			
+			if (nURLs == urlStart.length) {
+				urlStart = Arrays.copyOf(urlStart, nURLs * 2);
+				urlLength = Arrays.copyOf(urlLength, nURLs * 2);
+				urlHash = Arrays.copyOf(urlHash, nURLs * 2);
+			}
+			urlStart[nURLs] = start;
+			urlLength[nURLs] = length;
+			urlHash[nURLs] = hash;
+			table[slot] = nURLs + 1;
+			nURLs++;
+			
+			// Keeps the table at most half full
+			if (2 * nURLs > table.length) {
+				rehash();
+			}
+			
+			return nURLs - 1;
+		}
+		
+		private void rehash() {
+			table = new int[table.length * 2];
+			int mask = table.length - 1;
+			
+			for (int u = 0; u < nURLs; u++) {
+				int hash = urlHash[u];
+				int slot = (hash ^ (hash >>> 16)) & mask;
+				while (table[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				table[slot] = u + 1;
+			}
+		}
+		
+		private boolean equal(int start1, int start2, int length1, int length2) {
+			if (length1 != length2) {
+				return false;
+			}
+			
+			for (int i = 0; i < length1; i++) {
+				if (buffer.get(start1 + i) != buffer.get(start2 + i)) {
+					return false;
+				}
+			}
+			
+			return true;
+		}
+		
+		/*
+		 * Whether the URL with the given local id is the same as the one of another range
+		 */
+		boolean equal(int u, RangeTask other, int otherU) {
+			if (urlLength[u] != other.urlLength[otherU]) {
+				return false;
+			}
+			
+			for (int i = 0; i < urlLength[u]; i++) {
+				if (buffer.get(urlStart[u] + i) != other.buffer.get(other.urlStart[otherU] + i)) {
+					return false;
+				}
+			}
+			
+			return true;
+		}
+		
+		byte[] bytes(int u) {
+			byte[] bytes = new byte[urlLength[u]];
+			ByteBuffer view = buffer.duplicate();
+			view.position(urlStart[u]);
+			view.get(bytes);
+			
+			return bytes;
+		}
+		
+		String text(int start, int end) {
+			byte[] bytes = new byte[end - start];
+			ByteBuffer view = buffer.duplicate();
+			view.position(start);
+			view.get(bytes);
+			
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	}
+}
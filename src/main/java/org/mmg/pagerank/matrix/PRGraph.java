@@ -0,0 +1,299 @@
+package org.mmg.pagerank.matrix;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compact, array based representation of a series of URLs and their links.
+ * <br>
+ * <br>
+ * Each URL is mapped to a dense int id (0 .. N - 1) by a front coded URLDictionary
+ * (the URLs are only turned into Strings to be shown) and the incoming links are
+ * stored in compressed sparse row (CSR) format: the ids of the URLs linking to
+ * the node v are
+ * <br>
+ * <br>
+ * sources[offsets[v]] ... sources[offsets[v + 1] - 1]
+ * <br>
+ * <br>
+ * Together with the number of outgoing links of each node and the pagerank vector,
+ * this is all the information needed to calculate pagerank values, and no object
+ * is created per link. Unlike PRMatrix, the structure of the graph can't be
+ * modified once created.
+ * <br>
+ * <br>
+ * The only way to create an instance of this class is by using the
+ * PRMatrixFactory.
+ *
+ * @author Manuel Medina González
+ * @see PRMatrixFactory
+ *
+ */
+public class PRGraph {
+
+	// id <-> URL
+	private URLDictionary urls;
+	// Incoming links in CSR format
+	private int[] offsets;
+	private int[] sources;
+	// Number of outgoing links of each node
+	private int[] outDegree;
+	// Outgoing links in CSR format, only built when needed
+	private int[] outOffsets;
+	private int[] targets;
+	// Incoming links compressed, built on demand
+	private CompressedInLinks compressedInLinks;
+	// Ids of the nodes without outgoing links (rank leaks)
+	private int[] danglingNodes;
+	// The pagerank values
+	private double[] pageRanks;
+	// Ids in the order the URLs are shown and written, null for id order (see PRMatrixFactory.reorderPRGraph)
+	private int[] outputOrder;
+
+	private Logger logger = LoggerFactory.getLogger(PRGraph.class);
+
+	// Protected constructor to prevent unsafe creation
+	protected PRGraph(URLDictionary urls, int[] offsets, int[] sources, int[] outDegree) {
+		this.urls = urls;
+		this.offsets = offsets;
+		this.sources = sources;
+		this.outDegree = outDegree;
+		this.pageRanks = new double[urls.size()];
+
+		int nDangling = 0;
+		for (int degree : outDegree) {
+			if (degree == 0)
+				nDangling++;
+		}
+
+		danglingNodes = new int[nDangling];
+		nDangling = 0;
+		for (int v = 0; v < outDegree.length; v++) {
+			if (outDegree[v] == 0)
+				danglingNodes[nDangling++] = v;
+		}
+	}
+
+
+	public int getNumberOfNodes() {
+		return urls.size();
+	}
+
+	public int getNumberOfEdges() {
+		return sources.length;
+	}
+
+	public String getURL(int id) {
+		return urls.getURL(id);
+	}
+
+	/**
+	 * @param url A URL
+	 * @return The id of the given URL, or -1 if it is not part of the graph
+	 */
+	public int getId(String url) {
+		return urls.getId(url);
+	}
+
+	public boolean containsURL(String url) {
+		return urls.getId(url) != -1;
+	}
+
+	/**
+	 * @return The URLs of the graph, by id
+	 */
+	public URLDictionary getURLDictionary() {
+		return urls;
+	}
+
+	/*
+	 * The following arrays are exposed for the sake of the calculators' inner loops.
+	 * They must not be modified.
+	 */
+
+	/**
+	 * @return The CSR offsets (N + 1 elements) into the array returned by getInLinkSources()
+	 */
+	public int[] getInLinkOffsets() {
+		return offsets;
+	}
+
+	/**
+	 * @return The ids of the sources of the incoming links of every node, grouped by target node
+	 */
+	public int[] getInLinkSources() {
+		return sources;
+	}
+
+	public int[] getOutDegrees() {
+		return outDegree;
+	}
+
+	/**
+	 * The outgoing links are not needed by most calculators, so they are only
+	 * built (in O(N + L)) on the first call.
+	 * 
+	 * @return The CSR offsets (N + 1 elements) into the array returned by getOutLinkTargets()
+	 */
+	public synchronized int[] getOutLinkOffsets() {
+		if (outOffsets == null) {
+			buildOutLinks();
+		}
+
+		return outOffsets;
+	}
+
+	/**
+	 * @return The ids of the targets of the outgoing links of every node, grouped by source node
+	 */
+	public synchronized int[] getOutLinkTargets() {
+		if (targets == null) {
+			buildOutLinks();
+		}
+
+		return targets;
+	}
+
+	/**
+	 * Like the outgoing links, the compressed incoming links are only built (in O(N + L))
+	 * on the first call. The uncompressed ones are kept.
+	 * 
+	 * @return The incoming links of every node, gap encoded
+	 */
+	public synchronized CompressedInLinks getCompressedInLinks() {
+		if (compressedInLinks == null) {
+			compressedInLinks = new CompressedInLinks(offsets, sources);
+		}
+
+		return compressedInLinks;
+	}
+
+	/*
+	 * Transposes the incoming links
+	 */
+	private void buildOutLinks() {
+		int n = urls.size();
+		int[] next = new int[n];
+
+		outOffsets = new int[n + 1];
+		for (int v = 0; v < n; v++) {
+			outOffsets[v + 1] = outOffsets[v] + outDegree[v];
+			next[v] = outOffsets[v];
+		}
+
+		targets = new int[sources.length];
+		for (int v = 0; v < n; v++) {
+			for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+				targets[next[sources[e]]++] = v;
+			}
+		}
+	}
+
+	public int getNumberOfIncomingLinks(int id) {
+		return offsets[id + 1] - offsets[id];
+	}
+
+	/**
+	 * @return The pagerank vector, indexed by node id. Calculators update it in place.
+	 */
+	public double[] getPageRanks() {
+		return pageRanks;
+	}
+
+	public int[] getDanglingNodes() {
+		return danglingNodes;
+	}
+
+	public boolean isDangling(int id) {
+		return outDegree[id] == 0;
+	}
+
+	public boolean hasDanglingNodes() {
+		return danglingNodes.length > 0;
+	}
+
+	/*
+	 * The nodes of a reordered graph are shown in the order they had before, so the
+	 * results don't depend on the order used for the calculation
+	 */
+	int[] getOutputOrder() {
+		return outputOrder;
+	}
+
+	void setOutputOrder(int[] outputOrder) {
+		this.outputOrder = outputOrder;
+	}
+
+	public void printDanglingNodes() {
+		if (hasDanglingNodes()) {
+			logger.info("== List of rank leaks ==");
+			for (int v : danglingNodes) {
+				logger.info("- " + urls.getURL(v));
+			}
+		}
+		else {
+			logger.info("No rank leaks were found in the file");
+		}
+	}
+
+	public void printPageRanks() {
+		logger.info(" ==> Current pageranks: ");
+		for (int i = 0; i < pageRanks.length; i++) {
+			int v = outputOrder == null ? i : outputOrder[i];
+			logger.info(urls.getURL(v) + " => " + pageRanks[v]);
+		}
+	}
+
+	/**
+	 * Writes a line "URL pagerank" per node to the given file. It can be read by
+	 * PRMatrixFactory.loadPageRanks to start a later calculation from these values.
+	 */
+	public void savePageRanks(String filename) throws IOException {
+		savePageRanks(filename, pageRanks);
+	}
+
+	/**
+	 * Same as savePageRanks(filename), with other values of the nodes (such as those of
+	 * a topic of PersonalizedPageRank)
+	 */
+	public void savePageRanks(String filename, double[] values) throws IOException {
+		try(BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename), StandardCharsets.UTF_8))) {
+			for (int i = 0; i < values.length; i++) {
+				int v = outputOrder == null ? i : outputOrder[i];
+				bw.write(urls.getURL(v) + " " + values[v]);
+				bw.newLine();
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+
+		for (int v = 0; v < pageRanks.length; v++) {
+			sb.append("(" + urls.getURL(v) + ") Out: " + outDegree[v] + ", In: [");
+
+			for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+				sb.append(urls.getURL(sources[e]));
+				if (e + 1 != offsets[v + 1])
+					sb.append(",");
+			}
+
+			sb.append("] PageRank: " + pageRanks[v]);
+
+			if (isDangling(v))
+				sb.append(" → Rank Leak");
+
+			sb.append(System.getProperty("line.separator"));
+		}
+
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,66 @@
+package org.mmg.pagerank.matrix;
+
+/**
+ * The result of applying a file of added and removed links to a PRGraph:
+ * the new PRGraph, along with the nodes whose pagerank is directly affected.
+ * <br>
+ * <br>
+ * The nodes of the previous graph keep their ids and pagerank values, and new
+ * URLs get the next ids. A node is affected if one of its incoming links was added
+ * or removed, if a URL linking to it gained or lost outgoing links, or if it is new.
+ * <br>
+ * <br>
+ * The only way to create an instance of this class is by using the
+ * PRMatrixFactory.
+ *
+ * @author Manuel Medina González
+ * @see PRMatrixFactory
+ *
+ */
+public class PRGraphDelta {
+	
+	private PRGraph prGraph;
+	private int[] affectedNodes;
+	private int nAdded;
+	private int nRemoved;
+	private int nNewNodes;
+	// Whether a node became dangling or stopped being so
+	private boolean danglingChanged;
+	
+	// Protected constructor to prevent unsafe creation
+	protected PRGraphDelta(PRGraph prGraph, int[] affectedNodes, int nAdded, int nRemoved, int nNewNodes, boolean danglingChanged) {
+		this.prGraph = prGraph;
+		this.affectedNodes = affectedNodes;
+		this.nAdded = nAdded;
+		this.nRemoved = nRemoved;
+		this.nNewNodes = nNewNodes;
+		this.danglingChanged = danglingChanged;
+	}
+	
+	public PRGraph getGraph() {
+		return prGraph;
+	}
+	
+	/**
+	 * @return The ids of the affected nodes in the new graph
+	 */
+	public int[] getAffectedNodes() {
+		return affectedNodes;
+	}
+	
+	public int getNumberOfAddedLinks() {
+		return nAdded;
+	}
+	
+	public int getNumberOfRemovedLinks() {
+		return nRemoved;
+	}
+	
+	public int getNumberOfNewNodes() {
+		return nNewNodes;
+	}
+	
+	public boolean hasDanglingChanges() {
+		return danglingChanged;
+	}
+}
@@ -0,0 +1,291 @@
+package org.mmg.pagerank.matrix;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Binary file format of a PRGraph, so that a file of links only has to be parsed once.
+ * The file is read by mapping it into memory (FileChannel.map): the arrays are copied
+ * straight from the OS page cache, which is shared by repeated runs over the same file.
+ * <br>
+ * <br>
+ * Layout (little endian):
+ * <br>
+ * <br>
+ * int magic ("MMPG"), int version, int flags (1 if self links were kept), int N, int L
+ * <br>
+ * int[N + 1] offsets, int[L] sources (incoming links in CSR format, see PRGraph)
+ * <br>
+ * int[N] number of outgoing links of each node
+ * <br>
+ * int length of the longest URL, int D, int[B] block offsets, int[N] sorted ids, int[N] positions,
+ * byte[D] front coded URLs (the arrays of a URLDictionary, B = N / 16 rounded up)
+ * <br>
+ * <br>
+ * The URLs are stored as they are kept in memory, so reading them is a copy of the arrays.
+ * PRMatrixFactory.buildPRGraph detects the format from the magic number. Graphs too large
+ * for the heap can be used without reading the links into memory (see ExternalPRGraph).
+ *
+ * @author Manuel Medina González
+ * @see PRGraph
+ * @see PRMatrixFactory
+ *
+ */
+public class PRGraphFile {
+	
+	private static final int MAGIC = 0x47504d4d;
+	private static final int VERSION = 2;
+	private static final int SELF_LINKS_KEPT = 1;
+	static final int HEADER_SIZE = 5 * 4;
+	// Largest region mapped at once
+	private static final int MAX_MAP_SIZE = 1 << 30;
+	private static final int BUFFER_SIZE = 1 << 20;
+	
+	private static Logger logger = LoggerFactory.getLogger(PRGraphFile.class);
+	
+	/**
+	 * @param filename The name of a file
+	 * @return Whether the file starts with the magic number of the format
+	 * @throws IOException If the file does not exist of if there were problems while reading it.
+	 */
+	public static boolean isGraphFile(String filename) throws IOException {
+		try(RandomAccessFile file = new RandomAccessFile(filename, "r")) {
+			if (file.length() < HEADER_SIZE) {
+				return false;
+			}
+			
+			ByteBuffer header = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			file.getChannel().read(header, 0);
+			
+			return header.getInt(0) == MAGIC;
+		}
+	}
+	
+	/**
+	 * Writes the links and URLs of a PRGraph (not its pagerank values) to a file.
+	 *
+	 * @param prGraph The graph to write
+	 * @param selfLinksKept Whether the self links were kept when the graph was built
+	 * @param filename The name of the file
+	 * @throws IOException If there were problems while writing the file.
+	 */
+	public static void write(PRGraph prGraph, boolean selfLinksKept, String filename) throws IOException {
+		int n = prGraph.getNumberOfNodes();
+		
+		try(RandomAccessFile file = new RandomAccessFile(filename, "rw")) {
+			file.setLength(0);
+			FileChannel channel = file.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			
+			putHeader(buffer, selfLinksKept, n, prGraph.getNumberOfEdges());
+			
+			for (int offset : prGraph.getInLinkOffsets()) {
+				ensure(buffer, 4, channel);
+				buffer.putInt(offset);
+			}
+			for (int source : prGraph.getInLinkSources()) {
+				ensure(buffer, 4, channel);
+				buffer.putInt(source);
+			}
+			for (int degree : prGraph.getOutDegrees()) {
+				ensure(buffer, 4, channel);
+				buffer.putInt(degree);
+			}
+			putDictionary(buffer, channel, prGraph.getURLDictionary());
+			
+			flush(buffer, channel);
+		}
+	}
+	
+	/*
+	 * Puts the header of a graph file in the buffer (HEADER_SIZE bytes)
+	 */
+	static void putHeader(ByteBuffer buffer, boolean selfLinksKept, int n, int nLinks) {
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(selfLinksKept ? SELF_LINKS_KEPT : 0);
+		buffer.putInt(n);
+		buffer.putInt(nLinks);
+	}
+	
+	/*
+	 * Puts the arrays of the dictionary in the buffer, writing it to the channel when full
+	 */
+	static void putDictionary(ByteBuffer buffer, FileChannel channel, URLDictionary dictionary) throws IOException {
+		byte[] data = dictionary.getData();
+		
+		ensure(buffer, 8, channel);
+		buffer.putInt(dictionary.getMaxLength());
+		buffer.putInt(data.length);
+		
+		for (int offset : dictionary.getBlockOffsets()) {
+			ensure(buffer, 4, channel);
+			buffer.putInt(offset);
+		}
+		for (int id : dictionary.getSortedIds()) {
+			ensure(buffer, 4, channel);
+			buffer.putInt(id);
+		}
+		for (int position : dictionary.getPositions()) {
+			ensure(buffer, 4, channel);
+			buffer.putInt(position);
+		}
+		
+		int written = 0;
+		while (written < data.length) {
+			ensure(buffer, 1, channel);
+			int length = Math.min(buffer.remaining(), data.length - written);
+			buffer.put(data, written, length);
+			written += length;
+		}
+	}
+	
+	/*
+	 * Reads the dictionary of n URLs written by putDictionary at the given position
+	 */
+	static URLDictionary readDictionary(FileChannel channel, long position, int n) throws IOException {
+		ByteBuffer sizes = channel.map(FileChannel.MapMode.READ_ONLY, position, 8).order(ByteOrder.LITTLE_ENDIAN);
+		int maxLength = sizes.getInt();
+		byte[] data = new byte[sizes.getInt()];
+		position += 8;
+		
+		int[] blockOffsets = new int[URLDictionary.numberOfBlocks(n)];
+		position = readInts(channel, position, blockOffsets);
+		int[] sortedIds = new int[n];
+		position = readInts(channel, position, sortedIds);
+		int[] positions = new int[n];
+		position = readInts(channel, position, positions);
+		
+		for (int i = 0; i < data.length; i += MAX_MAP_SIZE) {
+			int count = Math.min(MAX_MAP_SIZE, data.length - i);
+			channel.map(FileChannel.MapMode.READ_ONLY, position, count).get(data, i, count);
+			position += count;
+		}
+		
+		return new URLDictionary(n, data, blockOffsets, sortedIds, positions, maxLength);
+	}
+	
+	/*
+	 * Reads a file written by write(). The URLs are read as a URLDictionary.
+	 */
+	static PRGraph read(String filename) throws IOException {
+		try(RandomAccessFile file = new RandomAccessFile(filename, "r")) {
+			FileChannel channel = file.getChannel();
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			
+			if (header.getInt() != MAGIC) {
+				throw new IOException(filename + " is not a graph file");
+			}
+			
+			int version = header.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported graph file version " + version + " in " + filename);
+			}
+			
+			int flags = header.getInt();
+			int n = header.getInt();
+			int nLinks = header.getInt();
+			long position = HEADER_SIZE;
+			
+			int[] offsets = new int[n + 1];
+			position = readInts(channel, position, offsets);
+			int[] sources = new int[nLinks];
+			position = readInts(channel, position, sources);
+			int[] outDegree = new int[n];
+			position = readInts(channel, position, outDegree);
+			
+			URLDictionary urls = readDictionary(channel, position, n);
+			
+			logger.info("Graph read from " + filename + ": " + n + " URLs, " + nLinks + " links"
+					    + ((flags & SELF_LINKS_KEPT) != 0 ? ", self links kept" : ""));
+			
+			return new PRGraph(urls, offsets, sources, outDegree);
+		}
+	}
+	
+	/*
+	 * Reads the per node arrays of a file written by write(). The links and URLs are left
+	 * in the file (see ExternalPRGraph).
+	 */
+	static ExternalPRGraph readExternal(String filename) throws IOException {
+		try(RandomAccessFile file = new RandomAccessFile(filename, "r")) {
+			FileChannel channel = file.getChannel();
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			
+			if (header.getInt() != MAGIC) {
+				throw new IOException(filename + " is not a graph file");
+			}
+			
+			int version = header.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported graph file version " + version + " in " + filename);
+			}
+			
+			header.getInt();
+			int n = header.getInt();
+			int nLinks = header.getInt();
+			
+			int[] offsets = new int[n + 1];
+			long sourcesPosition = readInts(channel, HEADER_SIZE, offsets);
+			int[] outDegree = new int[n];
+			readInts(channel, sourcesPosition + (long)nLinks * 4, outDegree);
+			
+			logger.info("Graph opened from " + filename + ": " + n + " URLs, " + nLinks + " links (read from the file when needed)");
+			
+			return new ExternalPRGraph(filename, nLinks, offsets, outDegree, sourcesPosition);
+		}
+	}
+	
+	/**
+	 * @param filename The name of a file written by write()
+	 * @return Whether the self links were kept when the graph of the file was built
+	 * @throws IOException If there were problems while reading the file.
+	 */
+	public static boolean hasSelfLinks(String filename) throws IOException {
+		try(RandomAccessFile file = new RandomAccessFile(filename, "r")) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			file.getChannel().read(header, 0);
+			
+			return (header.getInt(8) & SELF_LINKS_KEPT) != 0;
+		}
+	}
+	
+	/*
+	 * Copies the ints starting at the given position of the file into the array, one region
+	 * at a time. Returns the position after them.
+	 */
+	private static long readInts(FileChannel channel, long position, int[] values) throws IOException {
+		for (int i = 0; i < values.length; i += MAX_MAP_SIZE / 4) {
+			int count = Math.min(MAX_MAP_SIZE / 4, values.length - i);
+			MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, (long)count * 4);
+			region.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(values, i, count);
+			position += (long)count * 4;
+		}
+		
+		return position;
+	}
+	
+	/*
+	 * Writes the buffer to the channel if it doesn't have the given number of bytes left
+	 */
+	static void ensure(ByteBuffer buffer, int bytes, FileChannel channel) throws IOException {
+		if (buffer.remaining() < bytes) {
+			flush(buffer, channel);
+		}
+	}
+	
+	static void flush(ByteBuffer buffer, FileChannel channel) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
@@ -15,8 +15,8 @@ import org.slf4j.LoggerFactory;
  * Represents a series of URL and their information needed to
  * calculate pagerank values.
  * 
- * This class implements Clonable just to be able to deep copy it
- * when checking error rate.
+ * Each entry gets a dense id (0 .. N - 1) when it is first added, so
+ * calculators can keep the pagerank values in plain arrays.
  * 
  * The only way to create an instance of this class is by using the
  * PRMatrixFactory.
@@ -25,7 +25,7 @@ import org.slf4j.LoggerFactory;
  * @see PRMatrixFactory
  *
  */
-public class PRMatrix implements Cloneable {
+public class PRMatrix {
 
 	private ConcurrentHashMap<String, PRMatrixEntry> theMap;
 	private List<HashSet<String>> sinks;
@@ -126,6 +126,9 @@ public class PRMatrix implements Cloneable {
 	}
 	
 	public void setEntry(String url, PRMatrixEntry entry) {
+		if (entry.getId() == -1) {
+			entry.setId(theMap.size());
+		}
 		theMap.put(url, entry);
 	}
 	
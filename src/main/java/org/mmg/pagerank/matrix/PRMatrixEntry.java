@@ -13,16 +13,13 @@ public class PRMatrixEntry {
 
 	// Reference to the url this instance holds information for/
 	private String url;
+	// Position of this entry in the rank vectors used by the calculators
+	private int id;
 	// Outgoing links
 	private HashSet<LinkInfo> linksOut;
 	// Incoming links
 	private HashSet<String> linksIn;
 	
-	// Data used in Tarjan algorithm
-	private int index;
-	private int lowindex;
-	private boolean visited;
-	
 	// The pagerank value
 	private double pageRank;
 	
@@ -33,9 +30,8 @@ public class PRMatrixEntry {
 	public PRMatrixEntry(String url) {
 		linksOut = new HashSet<LinkInfo>();
 		linksIn = new HashSet<String>();
-		index = lowindex = -1;
+		id = -1;
 		pageRank = 0.0;
-		visited = false;
 		this.url = url;
 	}
 	
@@ -71,18 +67,13 @@ public class PRMatrixEntry {
 		return linksIn.size();
 	}
 	
-	public int getIndex() {
-		return index;
-	}
-	public void setIndex(int index) {
-		this.index = index;
-	}
-	public int getLowindex() {
-		return lowindex;
+	public int getId() {
+		return id;
 	}
-	public void setLowindex(int lowindex) {
-		this.lowindex = lowindex;
+	public void setId(int id) {
+		this.id = id;
 	}
+	
 	public double getPageRank() {
 		return pageRank;
 	}
@@ -98,14 +89,6 @@ public class PRMatrixEntry {
 		this.dangling = dangling;
 	}
 	
-	public boolean hasBeenVisited() {
-		return visited;
-	}
-	
-	public void setVisited(boolean visited) {
-		this.visited = visited;
-	}
-	
 	public void setURL(String url) {
 		this.url = url;
 	}
@@ -151,16 +134,6 @@ public class PRMatrixEntry {
 		if (dangling) 
 			sb.append(" → Rank Leak");
 		
-		/*if (index != -1) 
-			sb.append(" Index: " + index);				
-		
-		
-		if (lowindex != -1) 
-			sb.append(" Low index: " + lowindex);
-		
-		if (visited)
-			sb.append(" Visited");*/
-		
 		
 		return sb.toString();
 	}
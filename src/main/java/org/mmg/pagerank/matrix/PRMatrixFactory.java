@@ -1,10 +1,16 @@
 package org.mmg.pagerank.matrix;
 
 import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map.Entry;
 
@@ -12,14 +18,13 @@ import org.mmg.pagerank.PRSettings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.rits.cloning.Cloner;
-
 /**
- * Factory that creates instances of PRMatrix from a file containing links.
+ * Factory that creates instances of PRMatrix and PRGraph from a file containing links.
  * <br>
  * 
  * @author Manuel Medina González
  * @see PRMatrix
+ * @see PRGraph
  *
  */
 public class PRMatrixFactory {
@@ -42,7 +47,7 @@ public class PRMatrixFactory {
 		PRMatrix prMatrix = new PRMatrix();
 					
 		
-		try(BufferedReader br = new BufferedReader(new FileReader(filename))) {
+		try(BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(filename), StandardCharsets.UTF_8))) {
 			String line = null;
 			int counter = 1;
 			while ( (line = br.readLine()) != null) {
@@ -69,6 +74,620 @@ public class PRMatrixFactory {
 		return prMatrix;
 	}
 	
+	/**
+	 * Creates an instance of PRGraph representing the links contained in the given file.
+	 * It also follows the self links policy specified in the settings.
+	 * <br>
+	 * Unlike buildPRMatrix, no object is created per link or URL: URLs are mapped to int ids
+	 * and kept front coded (see URLDictionary), and links are kept as pairs of ids until the
+	 * graph is built. The file is parsed
+	 * on all the cores (see LinkFileParser).
+	 * <br>
+	 * The file can also be a graph file written by PRGraphFile, which is detected from its header.
+	 * 
+	 * @param filename The name of the file that contains the links information
+	 * @param settings Settings used when creating the PRGraph.
+	 * @return A new instance of PRGraph
+	 * @throws MalformedEntryException In case one line in the file is not in the correct format (String or 2 urls separated by a space)
+	 * @throws IOException If the file does not exist of if there were problems while reading it.
+	 * 
+	 * @see PRSettings
+	 */
+	public static PRGraph buildPRGraph(String filename, PRSettings settings) throws MalformedEntryException, IOException {
+		PRGraph prGraph = null;
+		
+		try {
+			if (PRGraphFile.isGraphFile(filename)) {
+				if (PRGraphFile.hasSelfLinks(filename) != (settings.getSelfLinksPolicy() == PRMatrixPolicy.KEEP)) {
+					logger.warn("The self links policy of the graph file " + filename + " is not the one in the settings. Using the graph file as it is");
+				}
+				
+				prGraph = PRGraphFile.read(filename);
+			}
+			else {
+				// The lines are parsed on all the cores
+				LinkFileParser parser = new LinkFileParser(filename, settings.getSelfLinksPolicy() == PRMatrixPolicy.KEEP,
+						                                   Runtime.getRuntime().availableProcessors());
+				parser.run();
+				
+				prGraph = createPRGraph(parser.getURLs(), parser.getLinks(), parser.getNumberOfLinks());
+			}
+			
+			setInitialPageRank(prGraph);
+		} catch (IOException e) {
+			logger.error("Something went wrong while reading the file " + filename + " Aborting");
+			System.exit(1);
+		}
+		
+		return prGraph;
+	}
+	
+	/**
+	 * Opens a graph file written by PRGraphFile without reading its links into memory: only
+	 * the arrays with a value per URL are read, the links are read from the file by the
+	 * calculation (see ExternalPRGraph). Every URL starts with a pagerank of 1/N.
+	 * 
+	 * @param filename The name of the graph file
+	 * @param settings Settings used when calculating the pagerank.
+	 * @return A new instance of ExternalPRGraph
+	 * @throws IOException If the file is not a graph file or if there were problems while reading it.
+	 * 
+	 * @see PRSettings
+	 */
+	public static ExternalPRGraph buildExternalPRGraph(String filename, PRSettings settings) throws IOException {
+		if (!PRGraphFile.isGraphFile(filename)) {
+			throw new IOException(filename + " is not a graph file, it can be created with the convert mode");
+		}
+		
+		if (PRGraphFile.hasSelfLinks(filename) != (settings.getSelfLinksPolicy() == PRMatrixPolicy.KEEP)) {
+			logger.warn("The self links policy of the graph file " + filename + " is not the one in the settings. Using the graph file as it is");
+		}
+		
+		ExternalPRGraph prGraph = PRGraphFile.readExternal(filename);
+		Arrays.fill(prGraph.getPageRanks(), (double)1/prGraph.getNumberOfNodes());
+		
+		return prGraph;
+	}
+	
+	/**
+	 * Creates an instance of PRGraph with the same links and pagerank values as the given PRMatrix.
+	 * Node ids are the ids of the matrix entries.
+	 * 
+	 * @param prMatrix The PRMatrix to convert
+	 * @return A new instance of PRGraph
+	 */
+	public static PRGraph buildPRGraph(PRMatrix prMatrix) {
+		int n = prMatrix.getNumberOfLinks();
+		String[] urls = new String[n];
+		HashMap<String,Integer> ids = new HashMap<String,Integer>();
+		int nLinks = 0;
+		
+		for (PRMatrixEntry entry : prMatrix.getAllEntries()) {
+			urls[entry.getId()] = entry.getURL();
+			ids.put(entry.getURL(), entry.getId());
+			nLinks += entry.getNumberOfIncomingLinks();
+		}
+		
+		URLDictionary.Builder dictionary = new URLDictionary.Builder(n);
+		for (String url : urls) {
+			dictionary.add(url);
+		}
+		
+		long[] links = new long[nLinks];
+		nLinks = 0;
+		for (PRMatrixEntry entry : prMatrix.getAllEntries()) {
+			for (String incomingLink : entry.getLinksIn()) {
+				links[nLinks++] = ((long)entry.getId() << 32) | ids.get(incomingLink);
+			}
+		}
+		
+		PRGraph prGraph = createPRGraph(dictionary.build(), links, nLinks);
+		
+		for (PRMatrixEntry entry : prMatrix.getAllEntries()) {
+			prGraph.getPageRanks()[entry.getId()] = entry.getPageRank();
+		}
+		
+		return prGraph;
+	}
+	
+	/**
+	 * Applies the links added and removed in the given file to a PRGraph. Each line of the
+	 * file is either "+ URLA URLB" (link from URLA to URLB added) or "- URLA URLB" (removed).
+	 * The self links policy specified in the settings is followed.
+	 * <br>
+	 * The given PRGraph is not modified: a new one is created, in which the URLs keep their
+	 * ids and pagerank values, so the calculation can go on from them. New URLs get the next
+	 * ids and an initial pagerank of 1/N.
+	 * 
+	 * @param prGraph The graph the changes are applied to
+	 * @param filename The name of the file that contains the changes
+	 * @param settings Settings used when creating the PRGraph.
+	 * @return The new PRGraph and the nodes affected by the changes
+	 * @throws MalformedEntryException In case one line in the file is not in the correct format
+	 * @throws IOException If the file does not exist of if there were problems while reading it.
+	 * 
+	 * @see PRGraphDelta
+	 */
+	public static PRGraphDelta applyDelta(PRGraph prGraph, String filename, PRSettings settings) throws MalformedEntryException, IOException {
+		int oldN = prGraph.getNumberOfNodes();
+		int[] oldOffsets = prGraph.getInLinkOffsets();
+		int[] oldSources = prGraph.getInLinkSources();
+		// Ids of the URLs not in the graph, from oldN on
+		HashMap<String,Integer> newIds = new HashMap<String,Integer>();
+		ArrayList<String> newURLs = new ArrayList<String>();
+		// Packed as in buildPRGraph
+		long[] added = new long[1024];
+		long[] removed = new long[1024];
+		int nAdded = 0;
+		int nRemoved = 0;
+		PRGraphDelta delta = null;
+		
+		try(BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(filename), StandardCharsets.UTF_8))) {
+			String line = null;
+			int counter = 1;
+			while ( (line = br.readLine()) != null) {
+				try {
+					String[] entry = parseDeltaLine(line);
+					
+					if (entry[1].equals(entry[2]) && settings.getSelfLinksPolicy() != PRMatrixPolicy.KEEP) {
+						continue;
+					}
+					
+					if (entry[0].equals("+")) {
+						if (nAdded == added.length) {
+							added = Arrays.copyOf(added, nAdded * 2);
+						}
+						added[nAdded++] = ((long)getOrCreateId(entry[2], prGraph, newIds, newURLs) << 32)
+								          | getOrCreateId(entry[1], prGraph, newIds, newURLs);
+					}
+					else if (getId(entry[1], prGraph, newIds) != -1 && getId(entry[2], prGraph, newIds) != -1) {
+						if (nRemoved == removed.length) {
+							removed = Arrays.copyOf(removed, nRemoved * 2);
+						}
+						removed[nRemoved++] = ((long)getId(entry[2], prGraph, newIds) << 32) | getId(entry[1], prGraph, newIds);
+					}
+				} catch (MalformedEntryException e) {
+					logger.error("==> Line " + counter + " does not have the correct format. Please check: " + line);
+				} finally {
+					counter++;
+				}
+			}
+			
+			Arrays.sort(removed, 0, nRemoved);
+			
+			// The links left, plus the new ones
+			long[] links = new long[prGraph.getNumberOfEdges() + nAdded];
+			int nLinks = 0;
+			// Only the links of the graph, removals of duplicate or missing links are dropped
+			long[] dropped = new long[nRemoved];
+			int nDropped = 0;
+			for (int v = 0; v < oldN; v++) {
+				for (int e = oldOffsets[v]; e < oldOffsets[v + 1]; e++) {
+					long link = ((long)v << 32) | oldSources[e];
+					if (Arrays.binarySearch(removed, 0, nRemoved, link) < 0) {
+						links[nLinks++] = link;
+					}
+					else {
+						dropped[nDropped++] = link;
+					}
+				}
+			}
+			removed = dropped;
+			nRemoved = nDropped;
+			System.arraycopy(added, 0, links, nLinks, nAdded);
+			nLinks += nAdded;
+			
+			// The URLs of the graph keep their ids
+			URLDictionary oldURLs = prGraph.getURLDictionary();
+			URLDictionary.Builder dictionary = new URLDictionary.Builder(oldN + newURLs.size());
+			for (int v = 0; v < oldN; v++) {
+				dictionary.add(oldURLs.getBytes(v));
+			}
+			for (String url : newURLs) {
+				dictionary.add(url);
+			}
+			
+			PRGraph newGraph = createPRGraph(dictionary.build(), links, nLinks);
+			int n = newGraph.getNumberOfNodes();
+			
+			System.arraycopy(prGraph.getPageRanks(), 0, newGraph.getPageRanks(), 0, oldN);
+			Arrays.fill(newGraph.getPageRanks(), oldN, n, (double)1/n);
+			
+			// New URLs are shown after the rest
+			if (prGraph.getOutputOrder() != null) {
+				int[] outputOrder = Arrays.copyOf(prGraph.getOutputOrder(), n);
+				for (int v = oldN; v < n; v++) {
+					outputOrder[v] = v;
+				}
+				newGraph.setOutputOrder(outputOrder);
+			}
+			
+			delta = createDelta(prGraph, newGraph, added, nAdded, removed, nRemoved);
+		} catch (IOException e) {
+			logger.error("Something went wrong while reading the file " + filename + " Aborting");
+			System.exit(1);
+		}
+		
+		return delta;
+	}
+	
+	/**
+	 * Creates a PRGraph with the same URLs, links and pagerank values as the given one, but with
+	 * the node ids in the given order. The calculators go through the nodes in id order and read
+	 * the pagerank of the sources of their incoming links, so when linked URLs have close ids those
+	 * reads hit the cache instead of going to memory.
+	 * <br>
+	 * The URLs and their values are still shown and written in the order of the given graph
+	 * (see PRGraph.savePageRanks).
+	 * 
+	 * @param prGraph The graph to reorder
+	 * @param order The order of the new ids
+	 * @return The reordered PRGraph, or the given one if order is NONE
+	 * 
+	 * @see PRNodeOrder
+	 */
+	public static PRGraph reorderPRGraph(PRGraph prGraph, PRNodeOrder order) {
+		int[] newIds;
+		
+		switch (order) {
+		case URL:
+			newIds = prGraph.getURLDictionary().getSortedPositions();
+			break;
+			
+		case BFS:
+			newIds = bfsOrder(prGraph);
+			break;
+			
+		case DEGREE:
+			newIds = degreeOrder(prGraph);
+			break;
+			
+		default:
+			return prGraph;
+		}
+		
+		int n = prGraph.getNumberOfNodes();
+		int[] oldOffsets = prGraph.getInLinkOffsets();
+		int[] oldSources = prGraph.getInLinkSources();
+		int[] oldOutDegree = prGraph.getOutDegrees();
+		double[] oldPageRanks = prGraph.getPageRanks();
+		int[] oldIds = new int[n];
+		
+		for (int v = 0; v < n; v++) {
+			oldIds[newIds[v]] = v;
+		}
+		
+		int[] offsets = new int[n + 1];
+		int[] sources = new int[oldSources.length];
+		int[] outDegree = new int[n];
+		
+		for (int v = 0; v < n; v++) {
+			int old = oldIds[v];
+			offsets[v + 1] = offsets[v] + oldOffsets[old + 1] - oldOffsets[old];
+			outDegree[v] = oldOutDegree[old];
+			
+			for (int e = oldOffsets[old], i = offsets[v]; e < oldOffsets[old + 1]; e++, i++) {
+				sources[i] = newIds[oldSources[e]];
+			}
+			// Sources sorted, as in createPRGraph
+			Arrays.sort(sources, offsets[v], offsets[v + 1]);
+		}
+		
+		PRGraph newGraph = new PRGraph(prGraph.getURLDictionary().renumber(newIds), offsets, sources, outDegree);
+		
+		int[] oldOutputOrder = prGraph.getOutputOrder();
+		int[] outputOrder = new int[n];
+		for (int i = 0; i < n; i++) {
+			outputOrder[i] = newIds[oldOutputOrder == null ? i : oldOutputOrder[i]];
+			newGraph.getPageRanks()[newIds[i]] = oldPageRanks[i];
+		}
+		newGraph.setOutputOrder(outputOrder);
+		
+		return newGraph;
+	}
+	
+	/**
+	 * Sets the initial pagerank values of a PRGraph from a file written by PRGraph.savePageRanks
+	 * (a line "URL pagerank" per URL), usually from a previous calculation over a similar graph.
+	 * <br>
+	 * The URLs not in the file get 1/N. The pagerank of the URLs in the file but not in the graph is
+	 * lost, so the values of the URLs found are scaled to add up to the rest of the total of 1.
+	 * 
+	 * @param prGraph The graph whose values are set
+	 * @param filename The name of the file that contains the previous values
+	 * @return The number of URLs of the graph found in the file
+	 * @throws IOException If the file does not exist of if there were problems while reading it.
+	 */
+	public static int loadPageRanks(PRGraph prGraph, String filename) throws IOException {
+		int n = prGraph.getNumberOfNodes();
+		double[] pageRanks = prGraph.getPageRanks();
+		boolean[] found = new boolean[n];
+		int nFound = 0;
+		int nRemoved = 0;
+		double foundMass = 0.0;
+		double removedMass = 0.0;
+		
+		try(BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(filename), StandardCharsets.UTF_8))) {
+			String line = null;
+			int counter = 1;
+			while ( (line = br.readLine()) != null) {
+				try {
+					Pair<String,String> entry = parseLine(line);
+					double pageRank = Double.parseDouble(entry.getSecond());
+					int v = prGraph.getId(entry.getFirst());
+					
+					if (v == -1) {
+						nRemoved++;
+						removedMass += pageRank;
+					}
+					else if (!found[v]) {
+						found[v] = true;
+						nFound++;
+						foundMass += pageRank;
+						pageRanks[v] = pageRank;
+					}
+				} catch (MalformedEntryException | NumberFormatException e) {
+					logger.error("==> Line " + counter + " does not have the correct format. Please check: " + line);
+				} finally {
+					counter++;
+				}
+			}
+		}
+		
+		double scale = (1.0 - (double)(n - nFound) / n) / foundMass;
+		for (int v = 0; v < n; v++) {
+			pageRanks[v] = found[v] && foundMass > 0 ? pageRanks[v] * scale : (double)1/n;
+		}
+		
+		logger.info("Initial pageranks from " + filename + ": " + nFound + " URLs found, " + (n - nFound) + " new, "
+				    + nRemoved + " no longer in the graph (pagerank " + removedMass + " renormalized)");
+		
+		return nFound;
+	}
+	
+	/**
+	 * Reads the seed URLs of each topic for personalized pagerank from a file with a line
+	 * "topic URL" per seed. The URLs not in the graph are skipped, and so are the topics
+	 * left without seeds.
+	 * 
+	 * @param prGraph The graph the seeds belong to
+	 * @param filename The name of the file that contains the seeds
+	 * @return The ids of the seeds of each topic, in the order the topics appear in the file
+	 * @throws IOException If the file does not exist of if there were problems while reading it.
+	 */
+	public static LinkedHashMap<String, int[]> loadSeeds(PRGraph prGraph, String filename) throws IOException {
+		LinkedHashMap<String, BitSet> topics = new LinkedHashMap<String, BitSet>();
+		int nUnknown = 0;
+		
+		try(BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(filename), StandardCharsets.UTF_8))) {
+			String line = null;
+			int counter = 1;
+			while ( (line = br.readLine()) != null) {
+				try {
+					Pair<String,String> entry = parseLine(line);
+					int v = prGraph.getId(entry.getSecond());
+					
+					if (v == -1) {
+						nUnknown++;
+					}
+					else {
+						if (!topics.containsKey(entry.getFirst())) {
+							topics.put(entry.getFirst(), new BitSet(prGraph.getNumberOfNodes()));
+						}
+						topics.get(entry.getFirst()).set(v);
+					}
+				} catch (MalformedEntryException e) {
+					logger.error("==> Line " + counter + " does not have the correct format. Please check: " + line);
+				} finally {
+					counter++;
+				}
+			}
+		}
+		
+		LinkedHashMap<String, int[]> seeds = new LinkedHashMap<String, int[]>();
+		for (Entry<String, BitSet> topic : topics.entrySet()) {
+			BitSet set = topic.getValue();
+			int[] ids = new int[set.cardinality()];
+			int i = 0;
+			for (int v = set.nextSetBit(0); v >= 0; v = set.nextSetBit(v + 1)) {
+				ids[i++] = v;
+			}
+			seeds.put(topic.getKey(), ids);
+		}
+		
+		logger.info("Seeds from " + filename + ": " + seeds.size() + " topics, " + nUnknown + " URLs not in the graph skipped");
+		
+		return seeds;
+	}
+	
+	/*
+	 * Finds the nodes of the new graph affected by the changes
+	 */
+	private static PRGraphDelta createDelta(PRGraph oldGraph, PRGraph newGraph, long[] added, int nAdded, long[] removed, int nRemoved) {
+		int oldN = oldGraph.getNumberOfNodes();
+		int n = newGraph.getNumberOfNodes();
+		int[] oldOutDegree = oldGraph.getOutDegrees();
+		int[] outDegree = newGraph.getOutDegrees();
+		BitSet affected = new BitSet(n);
+		boolean danglingChanged = false;
+		
+		// Changed incoming links
+		for (int i = 0; i < nAdded; i++) {
+			affected.set((int)(added[i] >>> 32));
+		}
+		for (int i = 0; i < nRemoved; i++) {
+			affected.set((int)(removed[i] >>> 32));
+		}
+		
+		// Changed share of the URLs linking to them
+		int[] outOffsets = newGraph.getOutLinkOffsets();
+		int[] targets = newGraph.getOutLinkTargets();
+		for (int v = 0; v < n; v++) {
+			if (v >= oldN || outDegree[v] != oldOutDegree[v]) {
+				affected.set(v);
+				for (int e = outOffsets[v]; e < outOffsets[v + 1]; e++) {
+					affected.set(targets[e]);
+				}
+				
+				danglingChanged |= v >= oldN ? outDegree[v] == 0 : (outDegree[v] == 0) != (oldOutDegree[v] == 0);
+			}
+		}
+		
+		int[] affectedNodes = new int[affected.cardinality()];
+		int i = 0;
+		for (int v = affected.nextSetBit(0); v >= 0; v = affected.nextSetBit(v + 1)) {
+			affectedNodes[i++] = v;
+		}
+		
+		return new PRGraphDelta(newGraph, affectedNodes, nAdded, nRemoved, n - oldN, danglingChanged);
+	}
+	
+	/*
+	 * Returns the id of the given URL, assigning the next one if it's new
+	 */
+	private static int getOrCreateId(String url, PRGraph prGraph, HashMap<String,Integer> newIds, ArrayList<String> newURLs) {
+		int id = getId(url, prGraph, newIds);
+		
+		if (id == -1) {
+			id = prGraph.getNumberOfNodes() + newURLs.size();
+			newIds.put(url, id);
+			newURLs.add(url);
+		}
+		
+		return id;
+	}
+	
+	/*
+	 * Returns the id of the given URL in the graph or among the new URLs, -1 if it is in neither
+	 */
+	private static int getId(String url, PRGraph prGraph, HashMap<String,Integer> newIds) {
+		int id = prGraph.getId(url);
+		
+		if (id == -1) {
+			Integer newId = newIds.get(url);
+			id = newId == null ? -1 : newId;
+		}
+		
+		return id;
+	}
+	
+	/*
+	 * O(N + L)
+	 * 
+	 * New id of each node in breadth first search order, following the links in both
+	 * directions. The searches start from the nodes not reached yet in the order of
+	 * their URLs, so the URLs of a host that are not linked together still get close ids.
+	 */
+	private static int[] bfsOrder(PRGraph prGraph) {
+		int n = prGraph.getNumberOfNodes();
+		int[] offsets = prGraph.getInLinkOffsets();
+		int[] sources = prGraph.getInLinkSources();
+		int[] outOffsets = prGraph.getOutLinkOffsets();
+		int[] targets = prGraph.getOutLinkTargets();
+		int[] sortedPositions = prGraph.getURLDictionary().getSortedPositions();
+		int[] roots = new int[n];
+		int[] newIds = new int[n];
+		// The queue is the new order itself: nodes are numbered when they are reached
+		int[] queue = new int[n];
+		int head = 0;
+		int tail = 0;
+		
+		for (int v = 0; v < n; v++) {
+			roots[sortedPositions[v]] = v;
+		}
+		Arrays.fill(newIds, -1);
+		
+		for (int root : roots) {
+			if (newIds[root] != -1) {
+				continue;
+			}
+			
+			newIds[root] = tail;
+			queue[tail++] = root;
+			
+			while (head < tail) {
+				int v = queue[head++];
+				
+				for (int e = outOffsets[v]; e < outOffsets[v + 1]; e++) {
+					if (newIds[targets[e]] == -1) {
+						newIds[targets[e]] = tail;
+						queue[tail++] = targets[e];
+					}
+				}
+				for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+					if (newIds[sources[e]] == -1) {
+						newIds[sources[e]] = tail;
+						queue[tail++] = sources[e];
+					}
+				}
+			}
+		}
+		
+		return newIds;
+	}
+	
+	/*
+	 * O(N log N)
+	 * 
+	 * New id of each node by decreasing number of incoming links, ties in id order.
+	 */
+	private static int[] degreeOrder(PRGraph prGraph) {
+		int n = prGraph.getNumberOfNodes();
+		int[] offsets = prGraph.getInLinkOffsets();
+		// Packed as (-number of incoming links, id), so they sort in the new order
+		long[] keys = new long[n];
+		int[] newIds = new int[n];
+		
+		for (int v = 0; v < n; v++) {
+			keys[v] = ((long)-(offsets[v + 1] - offsets[v]) << 32) | v;
+		}
+		Arrays.sort(keys);
+		
+		for (int i = 0; i < n; i++) {
+			newIds[(int)keys[i]] = i;
+		}
+		
+		return newIds;
+	}
+	
+	/*
+	 * O(L log L)
+	 * 
+	 * Sorts the packed links by target and then by source, drops the duplicates
+	 * and builds the CSR arrays out of them.
+	 */
+	private static PRGraph createPRGraph(URLDictionary urls, long[] links, int nLinks) {
+		int n = urls.size();
+		
+		Arrays.sort(links, 0, nLinks);
+		
+		int nUnique = 0;
+		for (int i = 0; i < nLinks; i++) {
+			if (nUnique == 0 || links[i] != links[nUnique - 1]) {
+				links[nUnique++] = links[i];
+			}
+		}
+		
+		int[] offsets = new int[n + 1];
+		int[] sources = new int[nUnique];
+		int[] outDegree = new int[n];
+		
+		for (int i = 0; i < nUnique; i++) {
+			int target = (int)(links[i] >>> 32);
+			int source = (int)links[i];
+			
+			offsets[target + 1]++;
+			outDegree[source]++;
+			sources[i] = source;
+		}
+		
+		for (int v = 0; v < n; v++) {
+			offsets[v + 1] += offsets[v];
+		}
+		
+		return new PRGraph(urls, offsets, sources, outDegree);
+	}
+	
 	/*
 	 * Parses the given line and checks whether it's well formed (one line, two links)
 	 */
@@ -82,6 +701,19 @@ public class PRMatrixFactory {
 	}
 	
 	
+	/*
+	 * Parses a line of a file of changes: "+" or "-" followed by two URLs
+	 */
+	private static String[] parseDeltaLine(String line) throws MalformedEntryException {
+		String[] entries = line.trim().replaceAll(" +", " ").split(" ");
+		
+		if (entries.length == 3 && (entries[0].equals("+") || entries[0].equals("-")))
+			return entries;
+		else
+			throw new MalformedEntryException("An entry in the changes file should be + or - followed by 2 URLS.");
+	}
+	
+	
 	/*
 	 * Given a pair of URLs (origin and target), create a matrix entry and insert it into the main matrix
 	 */
@@ -147,47 +779,6 @@ public class PRMatrixFactory {
 		
 	}
 	
-	/*
-	 *  O(n)
-	 *  
-	 *  Adds a link to each of all other pages to the outgoing links of the 
-	 *  dangling nodes.
-	 */
-	private static void insertDanglingNodes(PRMatrix prMatrix, PRMatrixPolicy selfLinksPolicy) {
-		
-		HashSet<LinkInfo> theLinks = new HashSet<LinkInfo>();
-		Cloner cloner = new Cloner();
-		
-		for (String url : prMatrix.getAllURLs()) {				
-			theLinks.add(new LinkInfo(url));
-		}
-
-		
-		for (Entry<String,PRMatrixEntry> entry : prMatrix.getURLEntrySet()) {
-			PRMatrixEntry prMatrixEntry = entry.getValue();
-			
-			if (prMatrixEntry.isDangling()) {
-				
-				HashSet<LinkInfo> linksToAdd = 	cloner.deepClone(theLinks);
-			
-				// Delete own link from the links
-				if (selfLinksPolicy == PRMatrixPolicy.IGNORE) {
-					linksToAdd.remove(new LinkInfo(entry.getKey()));
-				}
-				
-				prMatrixEntry.setLinksOut(linksToAdd);				
-				entry.setValue(prMatrixEntry);
-				
-				// Restore own link to the links
-				/*if (selfLinksPolicy == PRMatrixPolicy.IGNORE) {
-					theLinks.add(new LinkInfo(entry.getKey()));
-				}*/
-				
-				System.out.println("");
-			}
-		}
-	}
-	
 	/* O(n)
 	 * 
 	 * Initial pagerank set to 1/N 
@@ -196,14 +787,10 @@ public class PRMatrixFactory {
 	private static void setInitialPageRank(PRMatrix prMatrix, PRSettings settings) {
 		
 		/*
-		 * Adding dangling nodes means that we will assume that they have a link to 
-		 * all other pages. Create those entries and add them properly.
+		 * Dangling nodes are assumed to have a link to all other pages, but those
+		 * links are not added: calculators redistribute their total pagerank
+		 * uniformly instead (see dangling.nodes.policy).
 		 */
-		if (settings.getdNodesPolicy() == PRMatrixPolicy.KEEP) {
-			insertDanglingNodes(prMatrix, settings.getSelfLinksPolicy());
-		}
-
-		
 		for (Entry<String, PRMatrixEntry> entry : prMatrix.getURLEntrySet()) {
 			PRMatrixEntry prMatrixEntry = entry.getValue();
 			// Be sure to allows this to be variable
@@ -212,46 +799,77 @@ public class PRMatrixFactory {
 		}
 	}
 	
+	/* O(n)
+	 * 
+	 * Initial pagerank set to 1/N 
+	 * Where N = number of nodes
+	 */
+	private static void setInitialPageRank(PRGraph prGraph) {
+		Arrays.fill(prGraph.getPageRanks(), (double)1/prGraph.getNumberOfNodes());
+	}
+	
 	/*
-	 * Using Tarjan algorithm find strong connected components.
-	 * If inside a SCC there's a link that is not part of the SCC
-	 * then we have a sink.
+	 * Find strong connected components on all the cores (see ParallelSCC).
+	 * A SCC without links to URLs outside it is a sink.
 	 */
 	private static void findSinks(PRMatrix prMatrix) {
-		Tarjan tarjan = new Tarjan(prMatrix);
-		List<HashSet<String>> components = tarjan.getSCComponents();
-		List<HashSet<String>> sinks = new ArrayList<HashSet<String>>();
-		for (HashSet<String> b : components) {
-			
-			boolean sink = true;
-			
-			
-			// A rank sink is a scc with no links outside it
-			for (String url: b) {
-				
-				PRMatrixEntry entry = prMatrix.getEntry(url);
-				
-				HashSet<LinkInfo> linksOut = entry.getLinksOut();
-				
-				for (LinkInfo li : linksOut) {
-					// If there's an URL that is not in the Set, this is not a sink
-					if (!b.contains(li.getUrl())) {
-						sink = false;
-						break;
-					}
-				
-				}
-				
-				if (sink) {
-					sinks.add(b);
-					break;
-				}
-				
+		int n = prMatrix.getNumberOfLinks();
+		String[] urls = new String[n];
+		int[] outOffsets = new int[n + 1];
+		int[] inOffsets = new int[n + 1];
+		
+		for (PRMatrixEntry entry : prMatrix.getAllEntries()) {
+			urls[entry.getId()] = entry.getURL();
+			outOffsets[entry.getId() + 1] = entry.getLinksOut().size();
+			inOffsets[entry.getId() + 1] = entry.getNumberOfIncomingLinks();
+		}
+		
+		for (int v = 0; v < n; v++) {
+			outOffsets[v + 1] += outOffsets[v];
+			inOffsets[v + 1] += inOffsets[v];
+		}
+		
+		int[] outLinks = new int[outOffsets[n]];
+		int[] inLinks = new int[inOffsets[n]];
+		for (PRMatrixEntry entry : prMatrix.getAllEntries()) {
+			int e = outOffsets[entry.getId()];
+			for (LinkInfo li : entry.getLinksOut()) {
+				outLinks[e++] = prMatrix.getEntry(li.getUrl()).getId();
 			}
 			
-							
+			e = inOffsets[entry.getId()];
+			for (String url : entry.getLinksIn()) {
+				inLinks[e++] = prMatrix.getEntry(url).getId();
+			}
 		}
 		
+		ParallelSCC scc = new ParallelSCC(outOffsets, outLinks, inOffsets, inLinks, Runtime.getRuntime().availableProcessors());
+		scc.run();
+		
+		int[] component = scc.getComponentIds();
+		boolean[] sink = scc.getSinks();
+		// Component number -> position in the list of sinks
+		int[] position = new int[sink.length];
+		List<HashSet<String>> sinks = new ArrayList<HashSet<String>>();
+		
+		for (int c = 0; c < sink.length; c++) {
+			if (sink[c]) {
+				position[c] = sinks.size();
+				sinks.add(new HashSet<String>());
+			}
+		}
+		
+		for (int v = 0; v < n; v++) {
+			if (sink[component[v]]) {
+				sinks.get(position[component[v]]).add(urls[v]);
+			}
+		}
+		
+		logger.info("Strongly connected components: " + scc.getNumberOfComponents() + " (" + scc.getNumberOfTrimmedNodes()
+				    + " nodes trimmed). Rank sinks: " + sinks.size());
+		logger.info("Trimming: " + scc.getTrimmingTime() + " ms, SCC search: " + scc.getSearchTime()
+				    + " ms, Sink classification: " + scc.getClassificationTime() + " ms");
+		
 		prMatrix.setSinks(sinks);
 	}
 	
@@ -0,0 +1,25 @@
+package org.mmg.pagerank.matrix;
+
+/**
+ * Defines the order of the node ids of a PRGraph during the calculation (see
+ * PRMatrixFactory.reorderPRGraph).
+ * <br>
+ * <br>
+ * NONE: The ids given when the graph was built (order of first appearance in the file).
+ * <br>
+ * URL: The order of the URLs, so the URLs of the same host get consecutive ids.
+ * <br>
+ * BFS: Breadth first search over the links in both directions, so linked URLs get close ids.
+ * <br>
+ * DEGREE: Decreasing number of incoming links, so the most linked URLs share the cache.
+ * 
+ * @author Manuel Medina González
+ *
+ */
+public enum PRNodeOrder {
+	
+	NONE,
+	URL,
+	BFS,
+	DEGREE;
+}
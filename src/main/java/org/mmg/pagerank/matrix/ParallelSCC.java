@@ -0,0 +1,424 @@
+package org.mmg.pagerank.matrix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Finds the Strong Connected Components (SCC) of a graph given as CSR arrays
+ * (outgoing and incoming links of each int node id) using all the cores, and
+ * classifies the components that are rank sinks.
+ * <br>
+ * <br>
+ * It works in three steps:
+ * <br>
+ * <br>
+ * 1. Trimming: a node without incoming or outgoing links (among the nodes left) is
+ *    a component by itself. Such nodes are removed in rounds, the nodes of each round
+ *    in parallel, until none is left. Most nodes of a web graph go away here.
+ * <br>
+ * 2. Forward-backward search: the nodes left are split into partitions (colors).
+ *    For a pivot of a partition, the nodes reachable from it (forward) and those
+ *    reaching it (backward) are found. Their intersection is the component of the
+ *    pivot, and the other three sets are new partitions that can't share a component,
+ *    so they are searched in parallel.
+ * <br>
+ * 3. Sink classification: a component is a rank sink if none of its nodes links to
+ *    a node of another component (no outgoing link in the condensation graph).
+ *    Dangling nodes are thus sinks of a single node.
+ * <br>
+ * <br>
+ * The time taken by each step is kept, so it can be shown.
+ *
+ * @author Manuel Medina González
+ * @see Tarjan
+ *
+ */
+public class ParallelSCC {
+	
+	// Links in CSR format: links[offsets[v]] ... links[offsets[v + 1] - 1]
+	private int[] outOffsets;
+	private int[] outLinks;
+	private int[] inOffsets;
+	private int[] inLinks;
+	private int nThreads;
+	
+	private int[] component;
+	private AtomicInteger nextComponent = new AtomicInteger();
+	// Partition of each node during the search, -1 once its component is known
+	private int[] color;
+	private AtomicInteger nextColor = new AtomicInteger();
+	private boolean[] sink;
+	
+	private long trimmingTime;
+	private long searchTime;
+	private long classificationTime;
+	private int nTrimmed;
+	
+	public ParallelSCC(int[] outOffsets, int[] outLinks, int[] inOffsets, int[] inLinks, int nThreads) {
+		this.outOffsets = outOffsets;
+		this.outLinks = outLinks;
+		this.inOffsets = inOffsets;
+		this.inLinks = inLinks;
+		this.nThreads = nThreads;
+	}
+	
+	/**
+	 * Finds the components and the rank sinks. Must be called before the getters.
+	 */
+	public void run() {
+		int n = outOffsets.length - 1;
+		ForkJoinPool pool = new ForkJoinPool(nThreads);
+		
+		component = new int[n];
+		color = new int[n];
+		nextComponent.set(0);
+		nextColor.set(1);
+		
+		long start = System.currentTimeMillis();
+		int[] remaining = trim(pool, n);
+		nTrimmed = n - remaining.length;
+		trimmingTime = System.currentTimeMillis() - start;
+		
+		start = System.currentTimeMillis();
+		pool.invoke(new ForwardBackwardTask(remaining, 0));
+		searchTime = System.currentTimeMillis() - start;
+		
+		start = System.currentTimeMillis();
+		// A component is a sink until one of its nodes links outside it
+		sink = new boolean[nextComponent.get()];
+		Arrays.fill(sink, true);
+		pool.invoke(new ClassificationTask(0, n));
+		classificationTime = System.currentTimeMillis() - start;
+		
+		pool.shutdown();
+	}
+	
+	/**
+	 * @return The component number of each node
+	 */
+	public int[] getComponentIds() {
+		return component;
+	}
+	
+	public int getNumberOfComponents() {
+		return sink.length;
+	}
+	
+	/**
+	 * @return Whether each component is a rank sink
+	 */
+	public boolean[] getSinks() {
+		return sink;
+	}
+	
+	public int getNumberOfTrimmedNodes() {
+		return nTrimmed;
+	}
+	
+	public long getTrimmingTime() {
+		return trimmingTime;
+	}
+	
+	public long getSearchTime() {
+		return searchTime;
+	}
+	
+	public long getClassificationTime() {
+		return classificationTime;
+	}
+	
+	/*
+	 * Removes in rounds the nodes without incoming or outgoing links among the nodes left.
+	 * Each of them gets its own component. Returns the nodes left.
+	 */
+	private int[] trim(ForkJoinPool pool, int n) {
+		AtomicIntegerArray inDegree = new AtomicIntegerArray(n);
+		AtomicIntegerArray outDegree = new AtomicIntegerArray(n);
+		// 1 once a node has been trimmed, so it is only taken by a round once
+		AtomicIntegerArray trimmed = new AtomicIntegerArray(n);
+		
+		for (int v = 0; v < n; v++) {
+			inDegree.set(v, inOffsets[v + 1] - inOffsets[v]);
+			outDegree.set(v, outOffsets[v + 1] - outOffsets[v]);
+		}
+		
+		int[] round = pool.invoke(new TrimTask(null, 0, n, inDegree, outDegree, trimmed));
+		while (round.length > 0) {
+			round = pool.invoke(new TrimTask(round, 0, round.length, inDegree, outDegree, trimmed));
+		}
+		
+		int nRemaining = 0;
+		int[] remaining = new int[n];
+		for (int v = 0; v < n; v++) {
+			if (trimmed.get(v) == 0) {
+				remaining[nRemaining++] = v;
+			}
+			else {
+				color[v] = -1;
+			}
+		}
+		
+		return Arrays.copyOf(remaining, nRemaining);
+	}
+	
+	private static int[] concat(int[] a, int[] b) {
+		int[] result = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, result, a.length, b.length);
+		
+		return result;
+	}
+	
+	/**
+	 * A round of trimming over a range of nodes (all of them in the first round, the
+	 * nodes trimmed by the previous round afterwards), splitting it into halves until
+	 * it has no more than CHUNK nodes.
+	 * <br>
+	 * In the first round, the nodes without links are trimmed. Afterwards, the links of the
+	 * nodes trimmed by the previous round are removed from their neighbors' degrees, and the
+	 * neighbors left without links are trimmed.
+	 * <br>
+	 * Returns the nodes trimmed by the round.
+	 */
+	private class TrimTask extends RecursiveTask<int[]> {
+		
+		private static final long serialVersionUID = 1L;
+		private static final int CHUNK = 4096;
+		
+		// Nodes trimmed by the previous round, null in the first one
+		private int[] previous;
+		private int from;
+		private int to;
+		private AtomicIntegerArray inDegree;
+		private AtomicIntegerArray outDegree;
+		private AtomicIntegerArray trimmed;
+		private int[] result = new int[16];
+		private int nResult = 0;
+		
+		TrimTask(int[] previous, int from, int to, AtomicIntegerArray inDegree, AtomicIntegerArray outDegree,
+				 AtomicIntegerArray trimmed) {
+			this.previous = previous;
+			this.from = from;
+			this.to = to;
+			this.inDegree = inDegree;
+			this.outDegree = outDegree;
+			this.trimmed = trimmed;
+		}
+		
+		@Override
+		protected int[] compute() {
+			if (to - from > CHUNK) {
+				int middle = (from + to) >>> 1;
+				TrimTask left = new TrimTask(previous, from, middle, inDegree, outDegree, trimmed);
+				TrimTask right = new TrimTask(previous, middle, to, inDegree, outDegree, trimmed);
+				left.fork();
+				int[] rightResult = right.compute();
+				
+				return concat(left.join(), rightResult);
+			}
+			
+			for (int i = from; i < to; i++) {
+				if (previous == null) {
+					if (inDegree.get(i) == 0 || outDegree.get(i) == 0) {
+						take(i);
+					}
+					continue;
+				}
+				
+				int v = previous[i];
+				for (int e = outOffsets[v]; e < outOffsets[v + 1]; e++) {
+					if (inDegree.decrementAndGet(outLinks[e]) == 0) {
+						take(outLinks[e]);
+					}
+				}
+				for (int e = inOffsets[v]; e < inOffsets[v + 1]; e++) {
+					if (outDegree.decrementAndGet(inLinks[e]) == 0) {
+						take(inLinks[e]);
+					}
+				}
+			}
+			
+			return Arrays.copyOf(result, nResult);
+		}
+		
+		private void take(int v) {
+			if (trimmed.compareAndSet(v, 0, 1)) {
+				component[v] = nextComponent.getAndIncrement();
+				
+				if (nResult == result.length) {
+					result = Arrays.copyOf(result, nResult * 2);
+				}
+				result[nResult++] = v;
+			}
+		}
+	}
+	
+	/**
+	 * Forward-backward search of the components of a partition. After each search, the
+	 * two smaller partitions left are searched by new tasks and the largest one by this
+	 * task, so each new task gets at most half of the nodes and the tasks don't nest deeply.
+	 * <br>
+	 * The partitions have different colors, so a task never reaches the nodes of another
+	 * one, even while their colors change.
+	 */
+	private class ForwardBackwardTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private int[] nodes;
+		private int partition;
+		
+		ForwardBackwardTask(int[] nodes, int partition) {
+			this.nodes = nodes;
+			this.partition = partition;
+		}
+		
+		@Override
+		protected void compute() {
+			List<ForwardBackwardTask> forked = new ArrayList<ForwardBackwardTask>();
+			int[] current = nodes;
+			int currentColor = partition;
+			int[] queue = new int[current.length];
+			
+			while (current.length > 0) {
+				int pivot = current[0];
+				int forward = nextColor.getAndIncrement();
+				int backward = nextColor.getAndIncrement();
+				
+				// Forward: reachable from the pivot
+				search(pivot, outOffsets, outLinks, currentColor, forward, -1, -1, queue);
+				
+				// Backward: reaching the pivot. Forward and backward nodes are the component
+				int id = nextComponent.getAndIncrement();
+				search(pivot, inOffsets, inLinks, currentColor, backward, forward, id, queue);
+				
+				// Splits the rest of the partition by color
+				int[] counts = new int[3];
+				int[][] parts = new int[3][];
+				int[] colors = {forward, backward, currentColor};
+				for (int v : current) {
+					for (int p = 0; p < 3; p++) {
+						if (color[v] == colors[p]) {
+							counts[p]++;
+						}
+					}
+				}
+				for (int p = 0; p < 3; p++) {
+					parts[p] = new int[counts[p]];
+					counts[p] = 0;
+				}
+				for (int v : current) {
+					for (int p = 0; p < 3; p++) {
+						if (color[v] == colors[p]) {
+							parts[p][counts[p]++] = v;
+						}
+					}
+				}
+				
+				int largest = 0;
+				for (int p = 1; p < 3; p++) {
+					if (parts[p].length > parts[largest].length) {
+						largest = p;
+					}
+				}
+				
+				for (int p = 0; p < 3; p++) {
+					if (p != largest && parts[p].length > 0) {
+						ForwardBackwardTask task = new ForwardBackwardTask(parts[p], colors[p]);
+						task.fork();
+						forked.add(task);
+					}
+				}
+				
+				current = parts[largest];
+				currentColor = colors[largest];
+			}
+			
+			for (ForwardBackwardTask task : forked) {
+				task.join();
+			}
+		}
+		
+		/*
+		 * Breadth first search from the pivot over the given links. The nodes of color
+		 * from get the color to. If componentId != -1, the nodes of color found (and the
+		 * pivot) are the component: they get that id and stop being searched.
+		 */
+		private void search(int pivot, int[] offsets, int[] links, int from, int to, int found, int componentId, int[] queue) {
+			int head = 0;
+			int tail = 0;
+			
+			queue[tail++] = pivot;
+			mark(pivot, found, to, componentId);
+			
+			while (head < tail) {
+				int v = queue[head++];
+				
+				for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+					int w = links[e];
+					
+					if (color[w] == from || (componentId != -1 && color[w] == found)) {
+						mark(w, found, to, componentId);
+						queue[tail++] = w;
+					}
+				}
+			}
+		}
+		
+		private void mark(int v, int found, int to, int componentId) {
+			if (componentId != -1 && color[v] == found) {
+				component[v] = componentId;
+				color[v] = -1;
+			}
+			else {
+				color[v] = to;
+			}
+		}
+	}
+	
+	/**
+	 * Marks the components with a link to another component, over a range of nodes,
+	 * splitting it into halves until it has no more than CHUNK nodes.
+	 * <br>
+	 * Several tasks may mark the same component, but all of them write the same value
+	 * and it is only read once the pool is done.
+	 */
+	private class ClassificationTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		private static final int CHUNK = 4096;
+		
+		private int from;
+		private int to;
+		
+		ClassificationTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from > CHUNK) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new ClassificationTask(from, middle), new ClassificationTask(middle, to));
+				return;
+			}
+			
+			for (int v = from; v < to; v++) {
+				int c = component[v];
+				
+				for (int e = outOffsets[v]; e < outOffsets[v + 1]; e++) {
+					if (component[outLinks[e]] != c) {
+						sink[c] = false;
+						break;
+					}
+				}
+			}
+		}
+	}
+}
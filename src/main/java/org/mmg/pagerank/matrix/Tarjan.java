@@ -1,16 +1,18 @@
 package org.mmg.pagerank.matrix;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Stack;
-
-import org.mmg.pagerank.matrix.PRMatrix;
+import java.util.Arrays;
+import java.util.BitSet;
 
 /**
  * Simple implementation of the Tarjan algorithm to find Strong
- * Connected Components (SCC) in the PRMatrix. Those components
- * are used to find whether the PRMatrix has rank sinks.
+ * Connected Components (SCC) of a graph. Those components are used
+ * to calculate the pagerank component by component (see ComponentPageRank).
+ * <br>
+ * <br>
+ * It works over int node ids and links in CSR format (such as the outgoing or the
+ * incoming links of a PRGraph). The recursion is replaced by an
+ * explicit stack, so long chains of links don't overflow the thread stack, and
+ * whether a node is in the stack is kept in a BitSet instead of searching it.
  * 
  * <br>
  * <br>
@@ -23,61 +25,103 @@ import org.mmg.pagerank.matrix.PRMatrix;
  */
 public class Tarjan {
 
-	private int index = 0;
-	private Stack<PRMatrixEntry> theStack = new Stack<PRMatrixEntry>();
-	//private Map<String, PRMatrixEntry> theMap;
-	private PRMatrix theMatrix;
-	
-	public Tarjan(PRMatrix theMatrix) {
-		this.theMatrix = theMatrix;
-	}
+	// Links of the node v: links[offsets[v]] ... links[offsets[v + 1] - 1]
+	private int[] offsets;
+	private int[] links;
+	private int nComponents;
 	
-	public List<HashSet<String>> getSCComponents() {		
-		List<HashSet<String>> components = new ArrayList<HashSet<String>>();
-		for (PRMatrixEntry entry : theMatrix.getAllEntries()) {
-			if (!entry.hasBeenVisited()) {
-				components.addAll(strongConnect(entry));
-			}
-		}
-		
-		return components;
+	public Tarjan(int[] offsets, int[] links) {
+		this.offsets = offsets;
+		this.links = links;
 	}
 	
-	public List<HashSet<String>> strongConnect(PRMatrixEntry node) {
-		List<HashSet<String>> components = new ArrayList<HashSet<String>>();
-		HashSet<String> scc = new HashSet<String>();
+	/**
+	 * O(V + E)
+	 * <br>
+	 * Finds the SCC of the graph given as CSR arrays. The components are numbered
+	 * in the order they are completed: a component gets a higher number than every
+	 * other component it has links to.
+	 * 
+	 * @return The component number of each node
+	 */
+	public int[] getComponentIds() {
+		int n = offsets.length - 1;
+		int[] component = new int[n];
+		// Order in which the nodes are visited, -1 if not visited yet
+		int[] order = new int[n];
+		int[] lowlink = new int[n];
+		BitSet onStack = new BitSet(n);
+		int[] stack = new int[n];
+		int top = 0;
+		// Explicit call stack: node and position of its next link
+		int[] callNode = new int[n];
+		int[] callLink = new int[n];
+		int depth = 0;
+		int counter = 0;
 		
-		node.setIndex(index);
-		node.setLowindex(index);
-		node.setVisited(true);
-		index += 1;
-		theStack.push(node);
+		Arrays.fill(order, -1);
+		nComponents = 0;
 		
-		for (LinkInfo li : node.getLinksOut()) {			
-			PRMatrixEntry outNode = theMatrix.getEntry(li.getUrl());
-			
-			if (!outNode.hasBeenVisited()) {
-				components.addAll(strongConnect(outNode));
-				node.setLowindex(Math.min(node.getLowindex(), outNode.getLowindex()));
-			}
-			else if (theStack.contains(outNode)) {
-				node.setLowindex(Math.min(node.getLowindex(), outNode.getIndex()));
+		for (int root = 0; root < n; root++) {
+			if (order[root] != -1) {
+				continue;
 			}
-		}
-		
-		if (node.getLowindex() == node.getIndex()) {			
-			PRMatrixEntry inStackEntry = null;
 			
+			callNode[0] = root;
+			callLink[0] = offsets[root];
+			order[root] = lowlink[root] = counter++;
+			stack[top++] = root;
+			onStack.set(root);
+			depth = 1;
 			
-			do {
-				inStackEntry = theStack.pop();
-				scc.add(inStackEntry.getURL());
-			} while(!inStackEntry.equals(node));
-			
-			components.add(scc);
+			while (depth > 0) {
+				int v = callNode[depth - 1];
+				
+				if (callLink[depth - 1] < offsets[v + 1]) {
+					int w = links[callLink[depth - 1]++];
+					
+					if (order[w] == -1) {
+						// Visit w as if it were a recursive call
+						callNode[depth] = w;
+						callLink[depth] = offsets[w];
+						order[w] = lowlink[w] = counter++;
+						stack[top++] = w;
+						onStack.set(w);
+						depth++;
+					}
+					else if (onStack.get(w)) {
+						lowlink[v] = Math.min(lowlink[v], order[w]);
+					}
+					continue;
+				}
+				
+				// All the links of v are done: return from the call
+				if (lowlink[v] == order[v]) {
+					int w;
+					do {
+						w = stack[--top];
+						onStack.clear(w);
+						component[w] = nComponents;
+					} while (w != v);
+					nComponents++;
+				}
+				
+				depth--;
+				if (depth > 0) {
+					int parent = callNode[depth - 1];
+					lowlink[parent] = Math.min(lowlink[parent], lowlink[v]);
+				}
+			}
 		}
 		
-		return components;
+		return component;
+	}
+	
+	/**
+	 * @return The number of components found by the last call to getComponentIds()
+	 */
+	public int getNumberOfComponents() {
+		return nComponents;
 	}
 	
 }
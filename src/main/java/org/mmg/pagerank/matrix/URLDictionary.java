@@ -0,0 +1,483 @@
+package org.mmg.pagerank.matrix;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The URLs of a graph, mapped to dense int ids (0 .. N - 1), stored front coded:
+ * <br>
+ * <br>
+ * The URLs are sorted (by their UTF-8 bytes) and split into blocks of BLOCK_SIZE. The
+ * first URL of a block is stored whole, and each of the rest as the length of the prefix
+ * it shares with the previous one plus the rest of its bytes. URLs of the same host share
+ * long prefixes, so this takes a fraction of the memory of a String per URL plus a map.
+ * <br>
+ * <br>
+ * The ids are those given by the Builder (the order in which the URLs were added), and
+ * are translated to positions in the sorted order with two int arrays. Looking up the URL
+ * of an id decodes at most a block, and looking up the id of a URL is a binary search over
+ * the first URL of the blocks plus the decoding of a block. Strings are only created when
+ * a URL is looked up.
+ *
+ * @author Manuel Medina González
+ * @see PRGraph
+ *
+ */
+public class URLDictionary {
+	
+	// URLs per block
+	private static final int BLOCK_SIZE = 16;
+	
+	private int n;
+	// Front coded blocks
+	private byte[] data;
+	// Start of each block in data
+	private int[] blockOffsets;
+	// Id of the URL at each position of the sorted order, and position of each id
+	private int[] sortedIds;
+	private int[] positions;
+	// Length of the longest URL
+	private int maxLength;
+	
+	private URLDictionary() {
+	}
+	
+	/*
+	 * A dictionary from the arrays of another one (see PRGraphFile), used as they are
+	 */
+	URLDictionary(int n, byte[] data, int[] blockOffsets, int[] sortedIds, int[] positions, int maxLength) {
+		this.n = n;
+		this.data = data;
+		this.blockOffsets = blockOffsets;
+		this.sortedIds = sortedIds;
+		this.positions = positions;
+		this.maxLength = maxLength;
+	}
+	
+	public int size() {
+		return n;
+	}
+	
+	/**
+	 * @return The URL with the given id
+	 */
+	public String getURL(int id) {
+		byte[] bytes = new byte[maxLength];
+		int length = decode(positions[id], bytes);
+		
+		return new String(bytes, 0, length, StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * @return The UTF-8 bytes of the URL with the given id
+	 */
+	public byte[] getBytes(int id) {
+		byte[] bytes = new byte[maxLength];
+		int length = decode(positions[id], bytes);
+		
+		return Arrays.copyOf(bytes, length);
+	}
+	
+	/**
+	 * @param url A URL
+	 * @return The id of the given URL, or -1 if it is not in the dictionary
+	 */
+	public int getId(String url) {
+		byte[] key = url.getBytes(StandardCharsets.UTF_8);
+		if (n == 0 || key.length > maxLength) {
+			return -1;
+		}
+		
+		// Last block whose first URL is not after the key
+		int low = 0;
+		int high = blockOffsets.length - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			int position = blockOffsets[middle];
+			int length = readVarInt(position);
+			
+			if (compare(data, skipVarInt(position), length, key, 0, key.length) <= 0) {
+				low = middle;
+			}
+			else {
+				high = middle - 1;
+			}
+		}
+		
+		byte[] bytes = new byte[maxLength];
+		int first = low * BLOCK_SIZE;
+		int last = Math.min(n, first + BLOCK_SIZE);
+		int position = blockOffsets[low];
+		
+		for (int i = first; i < last; i++) {
+			int prefix = 0;
+			if (i != first) {
+				prefix = readVarInt(position);
+				position = skipVarInt(position);
+			}
+			int suffix = readVarInt(position);
+			position = skipVarInt(position);
+			
+			System.arraycopy(data, position, bytes, prefix, suffix);
+			position += suffix;
+			
+			int cmp = compare(bytes, 0, prefix + suffix, key, 0, key.length);
+			if (cmp == 0) {
+				return sortedIds[i];
+			}
+			if (cmp > 0) {
+				break;
+			}
+		}
+		
+		return -1;
+	}
+	
+	/**
+	 * @return The number of bytes used by the dictionary
+	 */
+	public long getMemorySize() {
+		return data.length + (long)blockOffsets.length * 4 + (long)n * 8;
+	}
+	
+	byte[] getData() {
+		return data;
+	}
+	
+	int[] getBlockOffsets() {
+		return blockOffsets;
+	}
+	
+	int[] getSortedIds() {
+		return sortedIds;
+	}
+	
+	int[] getPositions() {
+		return positions;
+	}
+	
+	int getMaxLength() {
+		return maxLength;
+	}
+	
+	/*
+	 * Number of blocks of a dictionary of n URLs
+	 */
+	static int numberOfBlocks(int n) {
+		return (n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+	}
+	
+	/*
+	 * Position of each id in the order of the URLs
+	 */
+	int[] getSortedPositions() {
+		return positions.clone();
+	}
+	
+	/*
+	 * The same URLs, the one with the id v getting the id newIds[v]. Only the two int arrays
+	 * are created, the front coded blocks are shared
+	 */
+	URLDictionary renumber(int[] newIds) {
+		URLDictionary dictionary = new URLDictionary();
+		dictionary.n = n;
+		dictionary.data = data;
+		dictionary.blockOffsets = blockOffsets;
+		dictionary.maxLength = maxLength;
+		dictionary.sortedIds = new int[n];
+		dictionary.positions = new int[n];
+		
+		for (int i = 0; i < n; i++) {
+			dictionary.sortedIds[i] = newIds[sortedIds[i]];
+			dictionary.positions[newIds[sortedIds[i]]] = i;
+		}
+		
+		return dictionary;
+	}
+	
+	/*
+	 * Decodes the URL at the given position of the sorted order into bytes. Returns its length
+	 */
+	private int decode(int sortedPosition, byte[] bytes) {
+		int first = sortedPosition / BLOCK_SIZE * BLOCK_SIZE;
+		int position = blockOffsets[sortedPosition / BLOCK_SIZE];
+		int length = 0;
+		
+		for (int i = first; i <= sortedPosition; i++) {
+			int prefix = 0;
+			if (i != first) {
+				prefix = readVarInt(position);
+				position = skipVarInt(position);
+			}
+			int suffix = readVarInt(position);
+			position = skipVarInt(position);
+			
+			System.arraycopy(data, position, bytes, prefix, suffix);
+			position += suffix;
+			length = prefix + suffix;
+		}
+		
+		return length;
+	}
+	
+	private int readVarInt(int position) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = data[position++];
+			value |= (b & 0x7f) << shift;
+			shift += 7;
+		} while (b < 0);
+		
+		return value;
+	}
+	
+	private int skipVarInt(int position) {
+		while (data[position++] < 0) {
+		}
+		
+		return position;
+	}
+	
+	/*
+	 * Compares as unsigned bytes, so the order is that of the code points
+	 */
+	private static int compare(byte[] bytes1, int start1, int length1, byte[] bytes2, int start2, int length2) {
+		int length = Math.min(length1, length2);
+		for (int i = 0; i < length; i++) {
+			int cmp = (bytes1[start1 + i] & 0xff) - (bytes2[start2 + i] & 0xff);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		
+		return length1 - length2;
+	}
+	
+	/**
+	 * Collects the URLs of a dictionary. Each URL added gets the next id, and must not
+	 * have been added before. The bytes of the URLs are copied into large chunks (no
+	 * object per URL) until the dictionary is built.
+	 *
+	 * @author Manuel Medina González
+	 *
+	 */
+	public static class Builder {
+		
+		// Size of the chunks of the URL bytes (1 << CHUNK_BITS)
+		private static final int CHUNK_BITS = 24;
+		private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+		// Largest array the VM can allocate
+		private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+		
+		// URL bytes, in chunks. No URL is split between chunks
+		private byte[][] chunks = new byte[16][];
+		private int nChunks;
+		private int chunkUsed = CHUNK_SIZE;
+		// Chunk * CHUNK_SIZE + position of the bytes of each URL, and their length
+		private long[] urlAddress;
+		private int[] urlLength;
+		private int n;
+		
+		public Builder(int expectedSize) {
+			urlAddress = new long[Math.max(16, expectedSize)];
+			urlLength = new int[urlAddress.length];
+		}
+		
+		/**
+		 * @param url The UTF-8 bytes of a URL
+		 * @return The id of the URL
+		 */
+		public int add(byte[] url) {
+			return add(url, 0, url.length);
+		}
+		
+		/**
+		 * @param buffer A buffer with the UTF-8 bytes of a URL
+		 * @param start The start of the URL in the buffer
+		 * @param length The number of bytes of the URL
+		 * @return The id of the URL
+		 */
+		public int add(byte[] buffer, int start, int length) {
+			if (chunkUsed + length > CHUNK_SIZE) {
+				// A URL longer than a chunk gets a chunk of its own
+				if (nChunks == chunks.length) {
+					chunks = Arrays.copyOf(chunks, nChunks * 2);
+				}
+				chunks[nChunks++] = new byte[Math.max(CHUNK_SIZE, length)];
+				chunkUsed = 0;
+			}
+			if (n == urlAddress.length) {
+				urlAddress = Arrays.copyOf(urlAddress, n * 2);
+				urlLength = Arrays.copyOf(urlLength, n * 2);
+			}
+			
+			System.arraycopy(buffer, start, chunks[nChunks - 1], chunkUsed, length);
+			urlAddress[n] = ((long)(nChunks - 1) << CHUNK_BITS) + chunkUsed;
+			urlLength[n] = length;
+			chunkUsed += length;
+			
+			return n++;
+		}
+		
+		public int add(String url) {
+			return add(url.getBytes(StandardCharsets.UTF_8));
+		}
+		
+		public int size() {
+			return n;
+		}
+		
+		/*
+		 * Whether the URL with the given id has the given bytes
+		 */
+		boolean equal(int id, byte[] buffer, int start, int length) {
+			return urlLength[id] == length && compare(chunk(id), position(id), length, buffer, start, length) == 0;
+		}
+		
+		/*
+		 * Hash code of the bytes of the URL with the given id (see hash())
+		 */
+		int hash(int id) {
+			return hash(chunk(id), position(id), urlLength[id]);
+		}
+		
+		static int hash(byte[] bytes, int start, int length) {
+			int hash = 0;
+			for (int i = start; i < start + length; i++) {
+				hash = 31 * hash + bytes[i];
+			}
+			
+			return hash;
+		}
+		
+		/*
+		 * The number of bytes used so far
+		 */
+		long getMemorySize() {
+			return (long)nChunks * CHUNK_SIZE + (long)urlAddress.length * 12;
+		}
+		
+		public URLDictionary build() {
+			URLDictionary dictionary = new URLDictionary();
+			dictionary.n = n;
+			dictionary.sortedIds = new int[n];
+			dictionary.positions = new int[n];
+			
+			for (int i = 0; i < n; i++) {
+				dictionary.sortedIds[i] = i;
+			}
+			sort(dictionary.sortedIds, new int[n], 0, n);
+			
+			dictionary.blockOffsets = new int[numberOfBlocks(n)];
+			// Grown as needed: front coded, the URLs take a fraction of their bytes
+			byte[] data = new byte[1 << 16];
+			int position = 0;
+			int previous = -1;
+			
+			for (int i = 0; i < n; i++) {
+				int id = dictionary.sortedIds[i];
+				byte[] chunk = chunk(id);
+				int start = position(id);
+				int length = urlLength[id];
+				dictionary.positions[id] = i;
+				dictionary.maxLength = Math.max(dictionary.maxLength, length);
+				
+				int prefix = 0;
+				if (i % BLOCK_SIZE != 0) {
+					byte[] previousChunk = chunk(previous);
+					int previousStart = position(previous);
+					int max = Math.min(urlLength[previous], length);
+					while (prefix < max && previousChunk[previousStart + prefix] == chunk[start + prefix]) {
+						prefix++;
+					}
+				}
+				
+				// Each entry takes at most 2 varints of 5 bytes plus its bytes
+				long needed = (long)position + 10 + length - prefix;
+				if (needed > data.length) {
+					if (needed > MAX_ARRAY_SIZE) {
+						throw new IllegalStateException("Too many URL bytes for a dictionary: " + needed + " front coded");
+					}
+					data = Arrays.copyOf(data, (int)Math.min(MAX_ARRAY_SIZE, Math.max(needed, 2L * data.length)));
+				}
+				
+				if (i % BLOCK_SIZE == 0) {
+					dictionary.blockOffsets[i / BLOCK_SIZE] = position;
+				}
+				else {
+					position = writeVarInt(data, position, prefix);
+				}
+				
+				position = writeVarInt(data, position, length - prefix);
+				System.arraycopy(chunk, start + prefix, data, position, length - prefix);
+				position += length - prefix;
+				previous = id;
+			}
+			
+			dictionary.data = Arrays.copyOf(data, position);
+			// The bytes of the URLs are no longer needed
+			chunks = null;
+			urlAddress = null;
+			urlLength = null;
+			
+			return dictionary;
+		}
+		
+		private byte[] chunk(int id) {
+			return chunks[(int)(urlAddress[id] >>> CHUNK_BITS)];
+		}
+		
+		private int position(int id) {
+			return (int)urlAddress[id] & (CHUNK_SIZE - 1);
+		}
+		
+		private static int writeVarInt(byte[] data, int position, int value) {
+			while ((value & ~0x7f) != 0) {
+				data[position++] = (byte)((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			data[position++] = (byte)value;
+			
+			return position;
+		}
+		
+		/*
+		 * Merge sort of the ids [from, to) by their URLs
+		 */
+		private void sort(int[] ids, int[] tmp, int from, int to) {
+			if (to - from < 2) {
+				return;
+			}
+			
+			int middle = (from + to) >>> 1;
+			sort(ids, tmp, from, middle);
+			sort(ids, tmp, middle, to);
+			
+			if (compareURLs(ids[middle - 1], ids[middle]) <= 0) {
+				return;
+			}
+			
+			System.arraycopy(ids, from, tmp, from, to - from);
+			int i = from;
+			int j = middle;
+			for (int k = from; k < to; k++) {
+				if (j == to || (i < middle && compareURLs(tmp[i], tmp[j]) <= 0)) {
+					ids[k] = tmp[i++];
+				}
+				else {
+					ids[k] = tmp[j++];
+				}
+			}
+		}
+		
+		private int compareURLs(int id1, int id2) {
+			long address1 = urlAddress[id1];
+			long address2 = urlAddress[id2];
+			
+			return compare(chunks[(int)(address1 >>> CHUNK_BITS)], (int)address1 & (CHUNK_SIZE - 1), urlLength[id1],
+					       chunks[(int)(address2 >>> CHUNK_BITS)], (int)address2 & (CHUNK_SIZE - 1), urlLength[id2]);
+		}
+	}
+}